@@ -0,0 +1,52 @@
+package cn.leancloud.plugin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+import cn.leancloud.plugin.Common;
+import cn.leancloud.plugin.LeanCloudMessageCodec;
+
+/**
+ * encode/decode of channel payloads with LeanCloudMessageCodec.
+ */
+@State(Scope.Thread)
+public class CodecBenchmark {
+  @Param({"message", "query", "roster", "conversation"})
+  public String payload;
+
+  private LeanCloudMessageCodec codec;
+  private Object value;
+  private ByteBuffer encoded;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    codec = new LeanCloudMessageCodec();
+    if ("message".equals(payload)) {
+      value = Payloads.messageEvent();
+    } else if ("query".equals(payload)) {
+      value = Payloads.queryResult();
+    } else if ("roster".equals(payload)) {
+      value = Payloads.rosterEvent();
+    } else {
+      value = Common.wrapSuccessResponse(Common.wrapConversation(Payloads.conversation()));
+    }
+    encoded = codec.encodeMessage(value);
+    encoded.flip();
+  }
+
+  @Benchmark
+  public ByteBuffer encode() {
+    return codec.encodeMessage(value);
+  }
+
+  @Benchmark
+  public Object decode() {
+    return codec.decodeMessage(encoded.duplicate());
+  }
+}
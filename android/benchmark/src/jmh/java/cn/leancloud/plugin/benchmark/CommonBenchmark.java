@@ -0,0 +1,62 @@
+package cn.leancloud.plugin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+
+import cn.leancloud.LCException;
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.LCIMMessage;
+import cn.leancloud.im.v2.LCIMMessageOption;
+import cn.leancloud.plugin.Common;
+
+/**
+ * wrap/parse helpers in Common, which run for every message and conversation crossing the channel.
+ */
+@State(Scope.Thread)
+public class CommonBenchmark {
+  private LCIMMessage message;
+  private Map<String, Object> rawMessage;
+  private LCIMConversation conversation;
+  private Map<String, Object> rawOption;
+  private LCException exception;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    message = Payloads.message(1);
+    rawMessage = Common.wrapMessage(message);
+    conversation = Payloads.conversation();
+    rawOption = Payloads.sendOption();
+    exception = new LCIMException(4301, 4301, "conversation not found");
+  }
+
+  @Benchmark
+  public Map<String, Object> wrapMessage() {
+    return Common.wrapMessage(message);
+  }
+
+  @Benchmark
+  public Map<String, Object> wrapConversation() {
+    return Common.wrapConversation(conversation);
+  }
+
+  @Benchmark
+  public Map<String, Object> wrapException() {
+    return Common.wrapException(exception);
+  }
+
+  @Benchmark
+  public LCIMMessage parseMessage() {
+    return Common.parseMessage(rawMessage);
+  }
+
+  @Benchmark
+  public LCIMMessageOption parseMessageOption() {
+    return Common.parseMessageOption(rawOption);
+  }
+}
@@ -0,0 +1,149 @@
+package cn.leancloud.plugin.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import cn.leancloud.im.LCIMOptions;
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMMessage;
+import cn.leancloud.im.v2.messages.LCIMTextMessage;
+import cn.leancloud.json.JSONObject;
+import cn.leancloud.plugin.Common;
+
+/**
+ * Representative payloads, generated from fixed seeds so every run measures the same data.
+ */
+public final class Payloads {
+  public static final String CLIENT_ID = "benchmark_client";
+  public static final String CONVERSATION_ID = "5f3d7c0ab8a3c90006b1f5a1";
+
+  public static final int QUERY_SIZE = 50;
+  public static final int ROSTER_SIZE = 2000;
+  public static final int ATTRIBUTE_SIZE = 200;
+
+  private Payloads() {
+  }
+
+  private static String text(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + random.nextInt(26)));
+    }
+    return builder.toString();
+  }
+
+  public static LCIMMessage message(long seed) {
+    Random random = new Random(seed);
+    LCIMTextMessage message = new LCIMTextMessage();
+    message.setText(text(random, 120));
+    Map<String, Object> attrs = new HashMap<>();
+    attrs.put("nickname", text(random, 12));
+    attrs.put("level", random.nextInt(100));
+    attrs.put("score", random.nextDouble());
+    message.setAttrs(attrs);
+    message.setMessageId(text(random, 20));
+    message.setFrom(text(random, 16));
+    message.setConversationId(CONVERSATION_ID);
+    message.setTimestamp(1600000000000L + random.nextInt(1000000));
+    return message;
+  }
+
+  /**
+   * @return wrapped message, as sent in onMessageReceive.
+   */
+  public static Map<String, Object> messageEvent() {
+    Map<String, Object> msgData = Common.wrapMessage(message(1));
+    msgData.put(Common.Param_Client_Id, CLIENT_ID);
+    msgData.put(Common.Param_Conv_Id, CONVERSATION_ID);
+    Map<String, Object> param = new HashMap<>();
+    param.put(Common.Param_Client_Id, CLIENT_ID);
+    param.put(Common.Param_Conv_Id, CONVERSATION_ID);
+    param.put(Common.Param_Message_Raw, msgData);
+    return param;
+  }
+
+  /**
+   * @return response of queryMessage with QUERY_SIZE messages.
+   */
+  public static Map<String, Object> queryResult() {
+    List<Map<String, Object>> messages = new ArrayList<>(QUERY_SIZE);
+    for (int i = 0; i < QUERY_SIZE; i++) {
+      messages.add(Common.wrapMessage(message(i)));
+    }
+    return Common.wrapSuccessResponse(messages);
+  }
+
+  /**
+   * @return onConversationMembersUpdate of a conversation with ROSTER_SIZE members.
+   */
+  public static Map<String, Object> rosterEvent() {
+    Random random = new Random(2);
+    List<String> members = new ArrayList<>(ROSTER_SIZE);
+    for (int i = 0; i < ROSTER_SIZE; i++) {
+      members.add(text(random, 16));
+    }
+    Map<String, Object> param = new HashMap<>();
+    param.put(Common.Param_Client_Id, CLIENT_ID);
+    param.put(Common.Param_Conv_Id, CONVERSATION_ID);
+    param.put(Common.Param_Members, members);
+    param.put(Common.Param_Operator, members.get(0));
+    param.put("op", "members-joined");
+    return param;
+  }
+
+  /**
+   * @return raw data of a conversation with ATTRIBUTE_SIZE custom attributes.
+   */
+  public static Map<String, Object> conversationData() {
+    Random random = new Random(3);
+    Map<String, Object> attrs = new HashMap<>();
+    for (int i = 0; i < ATTRIBUTE_SIZE; i++) {
+      if (0 == i % 3) {
+        attrs.put("key" + i, text(random, 32));
+      } else if (1 == i % 3) {
+        attrs.put("key" + i, random.nextLong());
+      } else {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("name", text(random, 8));
+        nested.put("value", random.nextDouble());
+        attrs.put("key" + i, nested);
+      }
+    }
+    List<String> members = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      members.add(text(random, 16));
+    }
+    Map<String, Object> data = new HashMap<>();
+    data.put("objectId", CONVERSATION_ID);
+    data.put("name", text(random, 24));
+    data.put("c", members.get(0));
+    data.put("m", members);
+    data.put("attr", attrs);
+    data.put("conv_type", 1);
+    data.put("createdAt", "2020-08-20T02:00:00.000Z");
+    data.put("updatedAt", "2020-08-20T03:00:00.000Z");
+    return data;
+  }
+
+  public static LCIMConversation conversation() {
+    LCIMOptions.getGlobalOptions().setMessageQueryCacheEnabled(false);
+    LCIMClient client = LCIMClient.getInstance(CLIENT_ID);
+    return LCIMConversation.parseFromJson(client, JSONObject.Builder.create(conversationData()));
+  }
+
+  public static Map<String, Object> sendOption() {
+    Map<String, Object> pushData = new HashMap<>();
+    pushData.put("alert", "new message");
+    pushData.put("badge", "Increment");
+    Map<String, Object> option = new HashMap<>();
+    option.put("will", false);
+    option.put("receipt", true);
+    option.put("priority", 2);
+    option.put("pushData", pushData);
+    return option;
+  }
+}
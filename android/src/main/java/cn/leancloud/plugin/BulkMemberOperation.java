@@ -0,0 +1,151 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMOperationFailure;
+import cn.leancloud.im.v2.callback.LCIMOperationPartiallySucceededCallback;
+
+/**
+ * Member operation (add, kick, block, mute...) for any number of members.
+ *
+ * Members are split into chunks of CHUNK_SIZE, run with at most PARALLELISM requests in flight,
+ * and the partial results are merged in input order. A chunk which fails as a whole reports its
+ * members as failed; only if every chunk fails, the whole operation fails with the first error.
+ * A list within CHUNK_SIZE is a single request, same as calling the SDK directly.
+ */
+public class BulkMemberOperation {
+  public interface Operation {
+    void run(List<String> members, LCIMOperationPartiallySucceededCallback callback);
+  }
+
+  public interface Callback {
+    /**
+     * @param e           error if every chunk failed, null otherwise.
+     * @param allowedPids members which succeeded.
+     * @param failedPids  failures, every one is {pids, error: {code, message}}.
+     */
+    void done(LCIMException e, List<String> allowedPids, List<Map<String, Object>> failedPids);
+  }
+
+  public static final int CHUNK_SIZE = 50;
+  public static final int PARALLELISM = 4;
+
+  private final Operation operation;
+  private final Callback callback;
+  private final List<List<String>> chunks = new ArrayList<>();
+  private final List<List<String>> allowed = new ArrayList<>();
+  private final List<List<Map<String, Object>>> failed = new ArrayList<>();
+  private LCIMException firstError = null;
+  private int failedChunks = 0;
+  private int nextChunk = 0;
+  private int finishedChunks = 0;
+
+  private BulkMemberOperation(Operation operation, Callback callback) {
+    this.operation = operation;
+    this.callback = callback;
+  }
+
+  public static void run(List<String> members, Operation operation, Callback callback) {
+    new BulkMemberOperation(operation, callback).start(members);
+  }
+
+  private void start(List<String> members) {
+    List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+    for (String member : new LinkedHashSet<>(members)) {
+      chunk.add(member);
+      if (chunk.size() == CHUNK_SIZE) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>(CHUNK_SIZE);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    for (int i = 0; i < chunks.size(); i++) {
+      allowed.add(null);
+      failed.add(null);
+    }
+    List<Integer> started = new ArrayList<>();
+    synchronized (this) {
+      while (nextChunk < PARALLELISM && nextChunk < chunks.size()) {
+        started.add(nextChunk++);
+      }
+    }
+    // run outside of lock, the SDK may call back synchronously.
+    for (int index : started) {
+      runChunk(index);
+    }
+  }
+
+  private void runChunk(final int index) {
+    final List<String> chunk = chunks.get(index);
+    operation.run(chunk, new LCIMOperationPartiallySucceededCallback() {
+      @Override
+      public void done(LCIMException e, List<String> successfulClientIds, List<LCIMOperationFailure> failures) {
+        onChunkDone(index, chunk, e, successfulClientIds, failures);
+      }
+    });
+  }
+
+  private void onChunkDone(int index, List<String> chunk, LCIMException e, List<String> successfulClientIds,
+                           List<LCIMOperationFailure> failures) {
+    int next = -1;
+    boolean last;
+    synchronized (this) {
+      List<Map<String, Object>> failedList = new ArrayList<>();
+      if (null != e) {
+        if (null == firstError) {
+          firstError = e;
+        }
+        failedChunks++;
+        failedList.add(wrapFailure(chunk, String.valueOf(e.getAppCode()), e.getMessage()));
+      } else if (null != failures) {
+        for (LCIMOperationFailure f : failures) {
+          failedList.add(wrapFailure(f.getMemberIds(), String.valueOf(f.getCode()), f.getReason()));
+        }
+      }
+      allowed.set(index, null != successfulClientIds ? successfulClientIds : new ArrayList<String>());
+      failed.set(index, failedList);
+      finishedChunks++;
+      if (nextChunk < chunks.size()) {
+        next = nextChunk++;
+      }
+      last = finishedChunks == chunks.size();
+    }
+    if (next >= 0) {
+      runChunk(next);
+    }
+    if (last) {
+      finish();
+    }
+  }
+
+  private void finish() {
+    if (failedChunks == chunks.size()) {
+      callback.done(firstError, null, null);
+      return;
+    }
+    List<String> allowedPids = new ArrayList<>();
+    List<Map<String, Object>> failedPids = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i++) {
+      allowedPids.addAll(allowed.get(i));
+      failedPids.addAll(failed.get(i));
+    }
+    callback.done(null, allowedPids, failedPids);
+  }
+
+  private static Map<String, Object> wrapFailure(List<String> members, String code, String message) {
+    Map<String, Object> failedData = new HashMap<>();
+    failedData.put("pids", members);
+    Map<String, String> errorMap = new HashMap<>();
+    errorMap.put("code", code);
+    errorMap.put("message", message);
+    failedData.put(Common.Param_Error, errorMap);
+    return failedData;
+  }
+}
@@ -0,0 +1,219 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Bounded in-flight window for method calls from Dart, per method class.
+ *
+ * - send: sendMessage, patchMessage.
+ * - query: queryMessage, queryConversation, member and receipt queries.
+ * - update: conversation and member updates.
+ * A call beyond the limit of its class waits in a FIFO queue of maxQueued calls, beyond that it's
+ * rejected at once with ErrorCode_Call_Rejected. A call leaves the window once its result is
+ * delivered. Other methods are never limited. Every class is unbounded by default.
+ */
+public class CallWindow {
+  public static final String Class_Send = "send";
+  public static final String Class_Query = "query";
+  public static final String Class_Update = "update";
+
+  public interface Call {
+    void run(MethodChannel.Result result);
+  }
+
+  private static final Set<String> SEND_METHODS = new HashSet<>(Arrays.asList(
+      Common.Method_Send_Message,
+      Common.Method_Patch_Message));
+  private static final Set<String> QUERY_METHODS = new HashSet<>(Arrays.asList(
+      Common.Method_Query_Message,
+      Common.Method_Query_Conversation,
+      Common.Method_Query_Block_Members,
+      Common.Method_Query_Mute_Members,
+      Common.Method_Query_Member_Count,
+      Common.Method_Get_Message_Receipt));
+  private static final Set<String> UPDATE_METHODS = new HashSet<>(Arrays.asList(
+      Common.Method_Update_Conversation,
+      Common.Method_Update_Members,
+      Common.Method_Update_Block_Members,
+      Common.Method_Update_Mute_Members,
+      Common.Method_Mute_Conversation));
+
+  private static class Window {
+    int limit = 0;
+    int maxQueued = 0;
+    int inFlight = 0;
+    final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    long queuedTotal = 0;
+    long rejectedTotal = 0;
+
+    Map<String, Object> snapshot() {
+      Map<String, Object> result = new HashMap<>();
+      result.put("limit", limit);
+      result.put("maxQueued", maxQueued);
+      result.put("inFlight", inFlight);
+      result.put("queued", queue.size());
+      result.put("queuedTotal", queuedTotal);
+      result.put("rejectedTotal", rejectedTotal);
+      return result;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Map<String, Window> windows = new HashMap<>();
+
+  public CallWindow() {
+    windows.put(Class_Send, new Window());
+    windows.put(Class_Query, new Window());
+    windows.put(Class_Update, new Window());
+  }
+
+  public static String classOf(String method) {
+    if (SEND_METHODS.contains(method)) {
+      return Class_Send;
+    }
+    if (QUERY_METHODS.contains(method)) {
+      return Class_Query;
+    }
+    if (UPDATE_METHODS.contains(method)) {
+      return Class_Update;
+    }
+    return null;
+  }
+
+  /**
+   * @param methodClass Class_Send, Class_Query or Class_Update.
+   * @param limit       max in-flight calls, non-positive value means no limit.
+   * @param maxQueued   max calls waiting for the window, more calls are rejected.
+   * @return false if methodClass is unknown.
+   */
+  public boolean configure(String methodClass, int limit, int maxQueued) {
+    Runnable[] released;
+    synchronized (this) {
+      Window window = windows.get(methodClass);
+      if (null == window) {
+        return false;
+      }
+      window.limit = limit;
+      window.maxQueued = Math.max(0, maxQueued);
+      released = pollRunnable(window);
+    }
+    for (Runnable runnable : released) {
+      handler.post(runnable);
+    }
+    return true;
+  }
+
+  /**
+   * run call once its class has room, or reject it if the queue is full too.
+   *
+   * @param method method name.
+   * @param call   the call, it must deliver its outcome through the given result.
+   * @param result result of the call.
+   */
+  public void submit(String method, final Call call, final MethodChannel.Result result) {
+    String methodClass = classOf(method);
+    final Window window = null == methodClass ? null : windows.get(methodClass);
+    if (null == window) {
+      call.run(result);
+      return;
+    }
+    boolean rejected = false;
+    synchronized (this) {
+      if (window.limit <= 0 || window.inFlight < window.limit) {
+        window.inFlight++;
+      } else if (window.queue.size() < window.maxQueued) {
+        window.queuedTotal++;
+        window.queue.add(new Runnable() {
+          @Override
+          public void run() {
+            runCall(window, call, result);
+          }
+        });
+        return;
+      } else {
+        window.rejectedTotal++;
+        rejected = true;
+      }
+    }
+    if (rejected) {
+      result.success(Common.wrapException(Exception.ErrorCode_Call_Rejected, Exception.ErrorMsg_Call_Rejected));
+      return;
+    }
+    runCall(window, call, result);
+  }
+
+  // called with lock held, takes every queued call which fits in the window.
+  private Runnable[] pollRunnable(Window window) {
+    ArrayDeque<Runnable> runnables = new ArrayDeque<>();
+    while (!window.queue.isEmpty() && (window.limit <= 0 || window.inFlight < window.limit)) {
+      window.inFlight++;
+      runnables.add(window.queue.poll());
+    }
+    return runnables.toArray(new Runnable[0]);
+  }
+
+  private void runCall(final Window window, Call call, final MethodChannel.Result result) {
+    final boolean[] released = new boolean[]{false};
+    final Runnable release = new Runnable() {
+      @Override
+      public void run() {
+        Runnable[] next;
+        synchronized (CallWindow.this) {
+          if (released[0]) {
+            return;
+          }
+          released[0] = true;
+          window.inFlight--;
+          next = pollRunnable(window);
+        }
+        // continue on a fresh main loop turn, results delivered synchronously don't nest.
+        for (Runnable runnable : next) {
+          handler.post(runnable);
+        }
+      }
+    };
+    MethodChannel.Result windowResult = new MethodChannel.Result() {
+      @Override
+      public void success(Object value) {
+        release.run();
+        result.success(value);
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        release.run();
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        release.run();
+        result.notImplemented();
+      }
+    };
+    try {
+      call.run(windowResult);
+    } catch (RuntimeException ex) {
+      release.run();
+      throw ex;
+    }
+  }
+
+  public synchronized Map<String, Object> snapshot() {
+    Map<String, Object> result = new HashMap<>();
+    for (Map.Entry<String, Window> entry : windows.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,146 @@
+package cn.leancloud.plugin;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMClientOpenOption;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMClientCallback;
+import cn.leancloud.utils.StringUtil;
+
+/**
+ * Opens clients natively before the Flutter engine starts.
+ *
+ * Events received in the meantime stay in the replay buffer of EventDispatcher until Dart
+ * opens the client. When Dart calls openClient for a pre-opened client, the call resolves
+ * against the already opened (or still opening) LCIMClient instead of opening a new session,
+ * as long as it asks for the same open option. Otherwise, or if the pre-open fails, the call
+ * goes through the normal open path with the option of Dart.
+ */
+public class ClientWarmup {
+  private final static String TAG = ClientWarmup.class.getSimpleName();
+
+  private static class Waiter {
+    final LCIMClientOpenOption option;
+    final LCIMClientCallback callback;
+
+    Waiter(LCIMClientOpenOption option, LCIMClientCallback callback) {
+      this.option = option;
+      this.callback = callback;
+    }
+  }
+
+  private static class Entry {
+    final String tag;
+    final LCIMClientOpenOption option;
+    final LCIMClient client;
+    boolean finished = false;
+    final List<Waiter> waiters = new ArrayList<>();
+
+    Entry(String tag, LCIMClientOpenOption option, LCIMClient client) {
+      this.tag = tag;
+      this.option = option;
+      this.client = client;
+    }
+  }
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final LeancloudPlugin.ClientProvider clientProvider;
+
+  /**
+   * @param clientProvider provides the LCIMClient instances to open, the same as openClient uses.
+   */
+  public ClientWarmup(LeancloudPlugin.ClientProvider clientProvider) {
+    this.clientProvider = clientProvider;
+  }
+
+  /**
+   * start opening a client.
+   *
+   * @param clientId client id.
+   * @param tag      client tag, nullable.
+   */
+  public void open(final String clientId, String tag) {
+    LCIMClient client = clientProvider.getClient(clientId, tag);
+    final Entry entry = new Entry(tag, new LCIMClientOpenOption(), client);
+    synchronized (this) {
+      if (entries.containsKey(clientId)) {
+        return;
+      }
+      entries.put(clientId, entry);
+    }
+    client.open(entry.option, new LCIMClientCallback() {
+      @Override
+      public void done(LCIMClient client, LCIMException e) {
+        Log.d(TAG, "pre-open client " + clientId + " finished. error=" + (null == e ? null : e.getMessage()));
+        List<Waiter> waiters;
+        synchronized (ClientWarmup.this) {
+          entry.finished = true;
+          waiters = new ArrayList<>(entry.waiters);
+          entry.waiters.clear();
+          if (!waiters.isEmpty() || null != e) {
+            entries.remove(clientId);
+          }
+        }
+        for (Waiter waiter : waiters) {
+          if (null == e && sameOption(entry.option, waiter.option)) {
+            waiter.callback.done(client, null);
+          } else {
+            // the pre-open error is not an answer to the open of Dart, open it as usual.
+            entry.client.open(waiter.option, waiter.callback);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * hand a pre-opened client over to the openClient call from Dart.
+   *
+   * @param clientId client id.
+   * @param tag      client tag requested by Dart, nullable.
+   * @param option   open option requested by Dart.
+   * @param callback called once the client is open.
+   * @return false if the client was not pre-opened (or pre-open failed), caller should open it as usual.
+   */
+  public boolean takeOver(String clientId, String tag, LCIMClientOpenOption option, LCIMClientCallback callback) {
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(clientId);
+      if (null == entry || !sameTag(entry.tag, tag)) {
+        return false;
+      }
+      if (!entry.finished) {
+        entry.waiters.add(new Waiter(option, callback));
+        return true;
+      }
+      entries.remove(clientId);
+    }
+    if (sameOption(entry.option, option)) {
+      callback.done(entry.client, null);
+    } else {
+      entry.client.open(option, callback);
+    }
+    return true;
+  }
+
+  public synchronized void remove(String clientId) {
+    entries.remove(clientId);
+  }
+
+  private static boolean sameTag(String tag, String other) {
+    if (StringUtil.isEmpty(tag)) {
+      return StringUtil.isEmpty(other);
+    }
+    return tag.equals(other);
+  }
+
+  private static boolean sameOption(LCIMClientOpenOption option, LCIMClientOpenOption other) {
+    return null == other || option.isReconnect() == other.isReconnect();
+  }
+}
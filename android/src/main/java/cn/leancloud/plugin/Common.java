@@ -24,29 +24,53 @@ public class Common {
   public static final String Method_Open_Client = "openClient";
   public static final String Method_Create_Conversation = "createConversation";
   public static final String Method_Fetch_Conversation = "getConversation";
+  public static final String Method_Get_Conversation_Snapshot = "getConversationSnapshot";
   public static final String Method_Query_Conversation = "queryConversation";
   public static final String Method_Send_Message = "sendMessage";
   public static final String Method_Read_Message = "readMessage";
+  public static final String Method_Read_Conversations = "readConversations";
   public static final String Method_Patch_Message = "patchMessage";
   public static final String Method_Get_Message_Receipt = "fetchReceiptTimestamp";
   public static final String Method_Query_Message = "queryMessage";
   public static final String Method_Query_Block_Members = "queryBlockedMembers";
   public static final String Method_Query_Mute_Members = "queryMutedMembers";
+  public static final String Method_Check_Moderation = "checkModeration";
+  public static final String Method_Export_Members = "exportMembers";
   public static final String Method_Update_Members = "updateMembers";
   public static final String Method_Update_Block_Members = "updateBlockMembers";
   public static final String Method_Update_Mute_Members = "updateMuteMembers";
   public static final String Method_Mute_Conversation = "muteToggle";
   public static final String Method_Update_Conversation = "updateData";
   public static final String Method_Query_Member_Count = "countMembers";
+  public static final String Method_Config_Inbound_Buffer = "setInboundBuffer";
+  public static final String Method_Get_Dispatch_Stats = "getDispatchStats";
+  public static final String Method_Set_Event_Route = "setEventRoute";
+  public static final String Method_Get_Metrics = "getMetrics";
+  public static final String Method_Set_Metrics_Snapshot = "setMetricsSnapshot";
+  public static final String Method_Set_Delivery_Trace = "setDeliveryTrace";
+  public static final String Method_Set_Update_Merge = "setUpdateMerge";
+  public static final String Method_Set_Read_Debounce = "setReadDebounce";
+  public static final String Method_Set_Ordered_Lanes = "setOrderedLanes";
+  public static final String Method_Set_Send_Pacing = "setSendPacing";
+  public static final String Method_Set_Call_Window = "setCallWindow";
+  public static final String Method_Set_Query_Cache = "setQueryCache";
+  public static final String Method_Set_Member_Count_Cache = "setMemberCountCache";
+  public static final String Method_Set_Receipt_Cache = "setReceiptCache";
 
   public static final String Method_Client_Offline = "onSessionClose";
   public static final String Method_Client_Disconnected = "onSessionDisconnect";
   public static final String Method_Client_Resumed = "onSessionResume";
   public static final String Method_Client_Opened = "onSessionOpen";
+  public static final String Method_Client_State_Changed = "onSessionStateChange";
 
   public static final String Method_Message_Received = "onMessageReceive";
   public static final String Method_Message_Receipted = "onMessageReceipt";
   public static final String Method_Message_Updated = "onMessagePatch";
+  public static final String Method_Message_Batch_Received = "onMessageBatchReceive";
+  public static final String Method_Message_Send_Queued = "onMessageSendQueue";
+  public static final String Method_Event_Replay = "onEventReplay";
+  public static final String Method_Metrics_Snapshot = "onMetricsSnapshot";
+  public static final String Method_Conv_Query_Refreshed = "onConversationQueryRefresh";
 
   public static final String Method_Conv_Member_Updated = "onConversationMembersUpdate";
   public static final String Method_Conv_Updated = "onConversationDataUpdate";
@@ -68,6 +92,7 @@ public class Common {
   public static final String Param_Conv_Attributes = "attr";
   public static final String Param_Conv_TTL = "ttl";
   public static final String Param_Conv_Id = "conversationId";
+  public static final String Param_Conv_Ids = "conversationIds";
 
   public static final String Param_Conv_MaxACK_Timestamp = "maxAckTimestamp";
   public static final String Param_Conv_MaxRead_Timestamp = "maxReadTimestamp";
@@ -76,7 +101,33 @@ public class Common {
 
   public static final String Param_Conv_Operation = "op";
   public static final String Param_Conv_Data = "data";
+  public static final String Param_Conv_Patch_Only = "patchOnly";
+  public static final String Param_Conv_Patch = "patch";
+  public static final String Param_Conv_Patch_Set = "set";
+  public static final String Param_Conv_Patch_Unset = "unset";
+  public static final String Param_Merge_Window = "window";
+  public static final String Param_Lanes_Enabled = "enabled";
+  public static final String Param_Pacing_Rate = "rate";
+  public static final String Param_Pacing_Burst = "burst";
+  public static final String Param_Pacing_Client_Rate = "clientRate";
+  public static final String Param_Pacing_Client_Burst = "clientBurst";
+  public static final String Param_Pacing_Max_Retries = "maxRetries";
+  public static final String Param_Pacing_Retry_Codes = "retryCodes";
+  public static final String Param_Queue_Position = "position";
+  public static final String Param_Window_Class = "class";
+  public static final String Param_Window_Limit = "limit";
+  public static final String Param_Window_Max_Queued = "maxQueued";
+  public static final String Param_Cache_TTL = "ttl";
+  public static final String Param_Cache_Max_Stale = "maxStale";
+  public static final String Param_Cache_Max_Age = "maxAge";
+  public static final String Param_Force_Refresh = "forceRefresh";
+  public static final String Param_Moderation_Kind = "kind";
+  public static final String Param_Moderation_Wait = "wait";
+  public static final String Param_Moderation_Ready = "ready";
+  public static final String Param_Export_Channel = "channel";
   public static final String Param_RawData = "rawData";
+  public static final String Param_Conv_Delta = "delta";
+  public static final String Param_Version = "version";
   public static final String Param_Count = "count";
   public static final String Param_Mention = "mention";
   public static final String Param_From = "from";
@@ -110,6 +161,23 @@ public class Common {
   public static final String Param_Message_Id = "id";
   public static final String Param_Message_Recall = "recall";
   public static final String Param_Message_Transient = "transient";
+  public static final String Param_Messages = "messages";
+  public static final String Param_Dropped = "dropped";
+  public static final String Param_Dropped_Total = "droppedTotal";
+  public static final String Param_Events = "events";
+  public static final String Param_Conversations = "conversations";
+  public static final String Param_Route_Methods = "methods";
+  public static final String Param_Route_Conversations = "conversationIds";
+  public static final String Param_Metrics_Interval = "interval";
+  public static final String Param_Trace_Sample_Rate = "sampleRate";
+  public static final String Param_Call_Time = "callTime";
+
+  public static final String Param_Buffer_Enabled = "enabled";
+  public static final String Param_Buffer_Capacity = "capacity";
+  public static final String Param_Buffer_Policy = "policy";
+  public static final String Param_Buffer_Sample_Rate = "sampleRate";
+  public static final String Param_Buffer_Flush_Interval = "flushInterval";
+  public static final String Param_Buffer_Batch_Size = "batchSize";
 
   public static final String Param_File_Path = "path";
   public static final String Param_File_Data = "data";
@@ -135,6 +203,10 @@ public class Common {
   public static final String Conv_Operation_Block = "block";
   public static final String Conv_Operation_Unblock = "unblock";
 
+  public static final String Inbound_Policy_Drop_Oldest = "dropOldest";
+  public static final String Inbound_Policy_Sample = "sample";
+  public static final String Inbound_Policy_Latest_Per_Sender = "latestPerSender";
+
   public static <T> T getMethodParam(MethodCall call, String key) {
     if (call.hasArgument(key)) {
       return call.argument(key);
@@ -156,6 +228,16 @@ public class Common {
     return 0;
   }
 
+  public static long getParamLong(MethodCall call, String key) {
+    if (call.hasArgument(key)) {
+      Object value = call.argument(key);
+      if (value instanceof Number) {
+        return ((Number) value).longValue();
+      }
+    }
+    return 0;
+  }
+
   public static String getParamString(MethodCall call, String key) {
     if (call.hasArgument(key)) {
       return call.argument(key);
@@ -0,0 +1,145 @@
+package cn.leancloud.plugin;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Connection health of every client, fed by DefaultClientEventHandler and DefaultMessageHandler.
+ *
+ * Tracks paused periods (count, total and per-pause duration), offline codes, and how
+ * many messages arrive within a short window after each resume, which shows the burst a
+ * reconnect produces.
+ */
+public class ConnectionMonitor {
+  public static final String State_Online = "online";
+  public static final String State_Paused = "paused";
+  public static final String State_Offline = "offline";
+
+  public static final int DEFAULT_RESUME_WINDOW = 5000;
+
+  private static class ClientHealth {
+    String state = State_Online;
+    long stateSince = SystemClock.elapsedRealtime();
+    long pauseCount = 0;
+    long pausedMillis = 0;
+    long resumedAt = 0;
+    long messagesAfterResume = 0;
+    long lastResumeBurst = 0;
+    final LatencyHistogram pauseDuration = new LatencyHistogram();
+    final Map<Integer, Integer> offlineCodes = new HashMap<>();
+
+    Map<String, Object> snapshot() {
+      Map<String, Object> codes = new HashMap<>();
+      for (Map.Entry<Integer, Integer> entry : offlineCodes.entrySet()) {
+        codes.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      Map<String, Object> result = new HashMap<>();
+      result.put("state", state);
+      result.put("stateDuration", SystemClock.elapsedRealtime() - stateSince);
+      result.put("pauseCount", pauseCount);
+      result.put("pausedMillis", pausedMillis);
+      result.put("pauseDuration", pauseDuration.snapshot());
+      result.put("offlineCodes", codes);
+      result.put("messagesAfterResume", messagesAfterResume);
+      result.put("lastResumeBurst", lastResumeBurst);
+      return result;
+    }
+  }
+
+  private final Map<String, ClientHealth> clients = new HashMap<>();
+  private int resumeWindow = DEFAULT_RESUME_WINDOW;
+
+  private ClientHealth health(String clientId) {
+    ClientHealth health = clients.get(clientId);
+    if (null == health) {
+      health = new ClientHealth();
+      clients.put(clientId, health);
+    }
+    return health;
+  }
+
+  /**
+   * change the window after resume in which received messages are counted.
+   *
+   * @param millis window in milliseconds.
+   */
+  public synchronized void setResumeWindow(int millis) {
+    this.resumeWindow = millis > 0 ? millis : DEFAULT_RESUME_WINDOW;
+  }
+
+  /**
+   * @param clientId client id.
+   * @return compact state param for Dart.
+   */
+  public synchronized Map<String, Object> onPaused(String clientId) {
+    ClientHealth health = health(clientId);
+    if (!State_Paused.equals(health.state)) {
+      health.pauseCount++;
+      health.state = State_Paused;
+      health.stateSince = SystemClock.elapsedRealtime();
+    }
+    return state(clientId, health, 0);
+  }
+
+  public synchronized Map<String, Object> onResumed(String clientId) {
+    ClientHealth health = health(clientId);
+    long now = SystemClock.elapsedRealtime();
+    long paused = 0;
+    if (State_Paused.equals(health.state)) {
+      paused = now - health.stateSince;
+      health.pausedMillis += paused;
+      health.pauseDuration.record(paused * 1000);
+    }
+    health.state = State_Online;
+    health.stateSince = now;
+    health.resumedAt = now;
+    health.lastResumeBurst = 0;
+    return state(clientId, health, paused);
+  }
+
+  public synchronized Map<String, Object> onOffline(String clientId, int code) {
+    ClientHealth health = health(clientId);
+    Integer count = health.offlineCodes.get(code);
+    health.offlineCodes.put(code, null == count ? 1 : count + 1);
+    health.state = State_Offline;
+    health.stateSince = SystemClock.elapsedRealtime();
+    Map<String, Object> result = state(clientId, health, 0);
+    result.put(Common.Param_Code, code);
+    return result;
+  }
+
+  public synchronized void onMessage(String clientId) {
+    ClientHealth health = clients.get(clientId);
+    if (null != health && health.resumedAt > 0
+        && SystemClock.elapsedRealtime() - health.resumedAt <= resumeWindow) {
+      health.messagesAfterResume++;
+      health.lastResumeBurst++;
+    }
+  }
+
+  /**
+   * forget a closed client, so that snapshots don't keep reporting it.
+   */
+  public synchronized void removeClient(String clientId) {
+    clients.remove(clientId);
+  }
+
+  public synchronized Map<String, Object> snapshot() {
+    Map<String, Object> result = new HashMap<>();
+    for (Map.Entry<String, ClientHealth> entry : clients.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return result;
+  }
+
+  private static Map<String, Object> state(String clientId, ClientHealth health, long pausedMillis) {
+    Map<String, Object> result = new HashMap<>();
+    result.put(Common.Param_Client_Id, clientId);
+    result.put("state", health.state);
+    result.put("pauseCount", health.pauseCount);
+    result.put("pausedMillis", pausedMillis);
+    return result;
+  }
+}
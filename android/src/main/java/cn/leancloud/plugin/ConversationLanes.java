@@ -0,0 +1,204 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Ordered lanes for outbound operations of conversations.
+ *
+ * Operations on one conversation run one after another in the order they arrived, the next one
+ * starts once the result of the previous one is delivered. Different conversations run in parallel.
+ * Ordering per method:
+ * - sendMessage: messages are sent, and their results delivered, in call order.
+ * - patchMessage (update and recall): applied and delivered in call order, after earlier sends.
+ * - updateData: applied in call order. With update merging on, updateData skips the lane,
+ *   the merger already serializes it and completes merged callers together in call order.
+ * Other methods are not ordered. A lane moves on after LANE_TIMEOUT if an operation never
+ * delivers its result. An operation waiting on purpose holds its result with setHeld, the timeout
+ * only counts the time it's not held: a send held by SendPacer, and a send uploading its
+ * attachment, which holds the lane until its result is delivered. Disabled by default, since
+ * one operation in flight per conversation lowers the throughput of bursts.
+ */
+public class ConversationLanes {
+  public interface Task {
+    void run(MethodChannel.Result result);
+  }
+
+  /**
+   * result given to a task.
+   */
+  public interface HoldableResult extends MethodChannel.Result {
+    /**
+     * @param held true to stop the lane timeout, false to start it over.
+     */
+    void setHeld(boolean held);
+  }
+
+  public static final int LANE_TIMEOUT = 60 * 1000;
+
+  private static class Lane {
+    final String key;
+    final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    boolean running = false;
+
+    Lane(String key) {
+      this.key = key;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Map<String, Lane> lanes = new HashMap<>();
+  private boolean enabled = false;
+
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * hold or release result if it's given by a lane, no-op otherwise.
+   */
+  public static void setHeld(MethodChannel.Result result, boolean held) {
+    if (result instanceof HoldableResult) {
+      ((HoldableResult) result).setHeld(held);
+    }
+  }
+
+  /**
+   * @return lane key of the call, null if it's not ordered.
+   */
+  public synchronized String laneOf(String method, String clientId, String conversationId, boolean mergingUpdates) {
+    if (!enabled || null == clientId || null == conversationId) {
+      return null;
+    }
+    if (Common.Method_Send_Message.equals(method) || Common.Method_Patch_Message.equals(method)
+        || (Common.Method_Update_Conversation.equals(method) && !mergingUpdates)) {
+      return clientId + "/" + conversationId;
+    }
+    return null;
+  }
+
+  /**
+   * run task in lane of key once all earlier tasks of that lane are done.
+   *
+   * @param key    lane key.
+   * @param task   operation, it must deliver its outcome through the given result.
+   * @param result result of the call.
+   */
+  public void submit(String key, final Task task, final MethodChannel.Result result) {
+    final Lane lane;
+    synchronized (this) {
+      Lane existing = lanes.get(key);
+      if (null == existing) {
+        existing = new Lane(key);
+        lanes.put(key, existing);
+      }
+      lane = existing;
+      lane.tasks.add(new Runnable() {
+        @Override
+        public void run() {
+          runTask(lane, task, result);
+        }
+      });
+      if (lane.running) {
+        return;
+      }
+      lane.running = true;
+    }
+    next(lane);
+  }
+
+  private void next(Lane lane) {
+    Runnable runnable;
+    synchronized (this) {
+      runnable = lane.tasks.poll();
+      if (null == runnable) {
+        lane.running = false;
+        lanes.remove(lane.key);
+        return;
+      }
+    }
+    runnable.run();
+  }
+
+  private void runTask(final Lane lane, Task task, final MethodChannel.Result result) {
+    final boolean[] released = new boolean[]{false};
+    final Runnable[] timeout = new Runnable[1];
+    final Runnable release = new Runnable() {
+      @Override
+      public void run() {
+        synchronized (released) {
+          if (released[0]) {
+            return;
+          }
+          released[0] = true;
+        }
+        handler.removeCallbacks(timeout[0]);
+        // continue on a fresh main loop turn, results delivered synchronously don't nest.
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            next(lane);
+          }
+        });
+      }
+    };
+    timeout[0] = new Runnable() {
+      @Override
+      public void run() {
+        release.run();
+      }
+    };
+    handler.postDelayed(timeout[0], LANE_TIMEOUT);
+    HoldableResult laneResult = new HoldableResult() {
+      private boolean held = false;
+
+      @Override
+      public void setHeld(boolean held) {
+        synchronized (released) {
+          if (released[0] || this.held == held) {
+            return;
+          }
+          this.held = held;
+        }
+        handler.removeCallbacks(timeout[0]);
+        if (!held) {
+          handler.postDelayed(timeout[0], LANE_TIMEOUT);
+        }
+      }
+
+      @Override
+      public void success(Object value) {
+        result.success(value);
+        release.run();
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        result.error(errorCode, errorMessage, errorDetails);
+        release.run();
+      }
+
+      @Override
+      public void notImplemented() {
+        result.notImplemented();
+        release.run();
+      }
+    };
+    try {
+      task.run(laneResult);
+    } catch (RuntimeException ex) {
+      release.run();
+      throw ex;
+    }
+  }
+}
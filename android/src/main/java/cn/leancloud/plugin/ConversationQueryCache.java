@@ -0,0 +1,204 @@
+package cn.leancloud.plugin;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.leancloud.utils.StringUtil;
+
+/**
+ * Results of queryConversation, keyed by client and query.
+ *
+ * Within ttl a result is served from cache. Between ttl and maxStale it's still served at once,
+ * and the caller refreshes it in background. An entry is dropped as soon as one of its
+ * conversations changes (info, members or new message). A query stores its result only if none
+ * of its conversations changed after it was started, see beginQuery. Disabled by default.
+ */
+public class ConversationQueryCache {
+  public static final int DEFAULT_CAPACITY = 50;
+
+  private static class Entry {
+    final String clientId;
+    final List<Map<String, Object>> conversations;
+    final Set<String> conversationIds = new HashSet<>();
+    final long storedAt = SystemClock.elapsedRealtime();
+    boolean refreshing = false;
+
+    Entry(String clientId, List<Map<String, Object>> conversations) {
+      this.clientId = clientId;
+      this.conversations = conversations;
+      for (Map<String, Object> conversation : conversations) {
+        Object id = conversation.get("objectId");
+        if (id instanceof String) {
+          conversationIds.add((String) id);
+        }
+      }
+    }
+  }
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > DEFAULT_CAPACITY;
+    }
+  };
+  // generation of the last change per "clientId/conversationId", and per clientId for whole client,
+  // only kept while queries are running.
+  private final Map<String, Long> changes = new HashMap<>();
+  private long generation = 0;
+  private long configuredAt = 0;
+  private int runningQueries = 0;
+  private int ttl = 0;
+  private int maxStale = 0;
+
+  /**
+   * @param ttlMillis      time a result is fresh, non-positive value disables cache.
+   * @param maxStaleMillis time a result is still served while it's refreshed, at least ttl.
+   */
+  public synchronized void configure(int ttlMillis, int maxStaleMillis) {
+    this.ttl = ttlMillis;
+    this.maxStale = Math.max(ttlMillis, maxStaleMillis);
+    if (ttlMillis <= 0) {
+      entries.clear();
+    }
+    configuredAt = ++generation;
+  }
+
+  public synchronized boolean isEnabled() {
+    return ttl > 0;
+  }
+
+  public static String keyOf(String clientId, String where, String sort, int skip, int limit, int flag) {
+    return clientId + "|" + (StringUtil.isEmpty(where) ? "" : where.trim()) + "|"
+        + (StringUtil.isEmpty(sort) ? "" : sort.trim()) + "|" + skip + "|" + limit + "|" + flag;
+  }
+
+  /**
+   * @param key cache key.
+   * @return cached result, null if absent or older than maxStale.
+   */
+  public synchronized List<Map<String, Object>> get(String key) {
+    Entry entry = entries.get(key);
+    if (null == entry) {
+      return null;
+    }
+    if (SystemClock.elapsedRealtime() - entry.storedAt > maxStale) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.conversations;
+  }
+
+  /**
+   * whether the caller should refresh a result it just served, marks it refreshing if so.
+   *
+   * @param key cache key.
+   * @return true if the result is stale and no refresh is running.
+   */
+  public synchronized boolean beginRefresh(String key) {
+    Entry entry = entries.get(key);
+    if (null == entry || entry.refreshing || SystemClock.elapsedRealtime() - entry.storedAt <= ttl) {
+      return false;
+    }
+    entry.refreshing = true;
+    return true;
+  }
+
+  /**
+   * must be called before a query is sent, and be ended by endQuery exactly once.
+   *
+   * @return generation token of the query.
+   */
+  public synchronized long beginQuery() {
+    runningQueries++;
+    return generation;
+  }
+
+  /**
+   * store the result of a query, unless one of its conversations changed after it was started.
+   * the refreshing flag of key is cleared either way.
+   *
+   * @param clientId      client id.
+   * @param key           cache key.
+   * @param conversations query result, null if the query failed.
+   * @param token         result of beginQuery.
+   * @return true if the result is up to date and has been stored.
+   */
+  public synchronized boolean endQuery(String clientId, String key, List<Map<String, Object>> conversations,
+                                       long token) {
+    runningQueries = Math.max(0, runningQueries - 1);
+    boolean current = null != conversations && !changedSince(clientId, conversations, token);
+    if (current && ttl > 0) {
+      entries.put(key, new Entry(clientId, conversations));
+    } else {
+      Entry entry = entries.get(key);
+      if (null != entry) {
+        entry.refreshing = false;
+      }
+    }
+    if (0 == runningQueries) {
+      changes.clear();
+    }
+    return current && ttl > 0;
+  }
+
+  private boolean changedSince(String clientId, List<Map<String, Object>> conversations, long token) {
+    if (configuredAt > token) {
+      return true;
+    }
+    Long clientChange = changes.get(clientId);
+    if (null != clientChange && clientChange > token) {
+      return true;
+    }
+    for (Map<String, Object> conversation : conversations) {
+      Long change = changes.get(clientId + "/" + conversation.get("objectId"));
+      if (null != change && change > token) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void recordChange(String key) {
+    generation++;
+    if (runningQueries > 0) {
+      changes.put(key, generation);
+    }
+  }
+
+  /**
+   * drop results of clientId which contain conversationId.
+   */
+  public synchronized void invalidate(String clientId, String conversationId) {
+    if (null == conversationId) {
+      return;
+    }
+    recordChange(clientId + "/" + conversationId);
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.clientId.equals(clientId) && entry.conversationIds.contains(conversationId)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * drop all results of clientId, e.g. a conversation was created or the client was closed.
+   */
+  public synchronized void removeClient(String clientId) {
+    recordChange(clientId);
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().clientId.equals(clientId)) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMConversation;
+
+/**
+ * Last conversation data sent to Dart, with a version per conversation.
+ *
+ * Once Dart holds a snapshot, updates only carry the changed fields:
+ *   {base: previous version, version: new version, set: {key: value}, unset: [key]}
+ * The delta is built from the attributes carried by the update event, set.attr only holds
+ * changed custom attributes and a removed attribute is listed as "attr.key" in unset. Updates
+ * that can't be expressed that way (operations like Increment, nested keys) and the first update
+ * of an unknown conversation carry the full rawData instead.
+ * Query results seed snapshots too, so conversations loaded by a query get deltas at once.
+ * If Dart's version differs from base, it requests the full snapshot with getConversationSnapshot.
+ */
+public class ConversationSnapshots {
+  public static final int DEFAULT_CAPACITY = 500;
+
+  public static final String Field_Base = "base";
+  public static final String Field_Set = "set";
+  public static final String Field_Unset = "unset";
+
+  private static final String Attr_Prefix = Common.Param_Conv_Attributes + ".";
+
+  private static class Snapshot {
+    final long version;
+    final Map<String, Object> data;
+
+    Snapshot(long version, Map<String, Object> data) {
+      this.version = version;
+      this.data = data;
+    }
+  }
+
+  private final int capacity;
+  private long lastVersion = 0;
+  private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+      return size() > ConversationSnapshots.this.capacity;
+    }
+  };
+
+  public ConversationSnapshots() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public ConversationSnapshots(int capacity) {
+    this.capacity = capacity;
+  }
+
+  private static String keyOf(String clientId, String conversationId) {
+    return clientId + "/" + conversationId;
+  }
+
+  // dumpRawData may share maps with the conversation, keep our own copy to diff against.
+  private static Map<String, Object> copyOf(Map<String, Object> data) {
+    Map<String, Object> copy = new HashMap<>(data);
+    Object attr = copy.get(Common.Param_Conv_Attributes);
+    if (attr instanceof Map) {
+      copy.put(Common.Param_Conv_Attributes, new HashMap<>((Map<String, Object>) attr));
+    }
+    return copy;
+  }
+
+  /**
+   * full snapshot of conversation, for getConversationSnapshot.
+   *
+   * @param clientId     client id.
+   * @param conversation conversation instance.
+   * @return {version, rawData}
+   */
+  public Map<String, Object> full(String clientId, LCIMConversation conversation) {
+    Map<String, Object> data = Common.wrapConversation(conversation);
+    Map<String, Object> result = new HashMap<>();
+    result.put(Common.Param_Version, seed(clientId, conversation.getConversationId(), data));
+    result.put(Common.Param_RawData, data);
+    return result;
+  }
+
+  /**
+   * remember conversation data sent to Dart in full, e.g. by a query.
+   *
+   * @param clientId       client id.
+   * @param conversationId conversation id.
+   * @param data           wrapped conversation.
+   * @return snapshot version of data.
+   */
+  public synchronized long seed(String clientId, String conversationId, Map<String, Object> data) {
+    String key = keyOf(clientId, conversationId);
+    Snapshot snapshot = snapshots.get(key);
+    if (null == snapshot || !snapshot.data.equals(data)) {
+      snapshot = new Snapshot(++lastVersion, copyOf(data));
+      snapshots.put(key, snapshot);
+    }
+    return snapshot.version;
+  }
+
+  /**
+   * fill change of conversation into event param, as delta when a snapshot was sent before,
+   * otherwise as full rawData.
+   *
+   * @param clientId     client id.
+   * @param conversation conversation instance.
+   * @param changed      changed attributes carried by the update event.
+   * @param param        event param.
+   */
+  public synchronized void fillChange(String clientId, LCIMConversation conversation, Map<String, Object> changed,
+                                      Map<String, Object> param) {
+    String key = keyOf(clientId, conversation.getConversationId());
+    Snapshot previous = snapshots.get(key);
+    Map<String, Object> set = new HashMap<>();
+    Map<String, Object> attrSet = new HashMap<>();
+    List<String> unset = new ArrayList<>();
+    if (null == previous || null == changed || !deltaOf(changed, set, attrSet, unset)) {
+      Map<String, Object> data = Common.wrapConversation(conversation);
+      Snapshot current = new Snapshot(++lastVersion, copyOf(data));
+      snapshots.put(key, current);
+      param.put(Common.Param_Version, current.version);
+      param.put(Common.Param_RawData, data);
+      return;
+    }
+    Snapshot current = new Snapshot(++lastVersion, previous.data);
+    snapshots.put(key, current);
+    apply(current.data, set, attrSet, unset);
+    if (!attrSet.isEmpty()) {
+      set.put(Common.Param_Conv_Attributes, attrSet);
+    }
+    Map<String, Object> delta = new HashMap<>();
+    delta.put(Field_Base, previous.version);
+    delta.put(Common.Param_Version, current.version);
+    delta.put(Field_Set, set);
+    delta.put(Field_Unset, unset);
+    param.put(Common.Param_Conv_Delta, delta);
+  }
+
+  /**
+   * split changed attributes into top level set, custom attribute set and unset keys.
+   *
+   * @return false if some change has to be resolved against the whole conversation.
+   */
+  private static boolean deltaOf(Map<String, Object> changed, Map<String, Object> set, Map<String, Object> attrSet,
+                                 List<String> unset) {
+    for (Map.Entry<String, Object> entry : changed.entrySet()) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+      if (Common.Param_Conv_Attributes.equals(key) && value instanceof Map) {
+        for (Map.Entry<String, Object> attr : ((Map<String, Object>) value).entrySet()) {
+          if (!putChange(Attr_Prefix + attr.getKey(), attr.getKey(), attr.getValue(), attrSet, unset)) {
+            return false;
+          }
+        }
+      } else if (key.startsWith(Attr_Prefix)) {
+        if (!putChange(key, key.substring(Attr_Prefix.length()), value, attrSet, unset)) {
+          return false;
+        }
+      } else if (!putChange(key, key, value, set, unset)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean putChange(String fullKey, String key, Object value, Map<String, Object> set,
+                                   List<String> unset) {
+    if (key.contains(".")) {
+      return false;
+    }
+    if (value instanceof Map && ((Map) value).containsKey("__op")) {
+      if (!"Delete".equalsIgnoreCase(String.valueOf(((Map) value).get("__op")))) {
+        return false;
+      }
+      unset.add(fullKey);
+      return true;
+    }
+    set.put(key, value);
+    return true;
+  }
+
+  private static void apply(Map<String, Object> data, Map<String, Object> set, Map<String, Object> attrSet,
+                            List<String> unset) {
+    data.putAll(set);
+    Object attr = data.get(Common.Param_Conv_Attributes);
+    if (!attrSet.isEmpty()) {
+      if (!(attr instanceof Map)) {
+        attr = new HashMap<String, Object>();
+        data.put(Common.Param_Conv_Attributes, attr);
+      }
+      ((Map<String, Object>) attr).putAll(attrSet);
+    }
+    for (String key : unset) {
+      if (key.startsWith(Attr_Prefix)) {
+        if (attr instanceof Map) {
+          ((Map) attr).remove(key.substring(Attr_Prefix.length()));
+        }
+      } else {
+        data.remove(key);
+      }
+    }
+  }
+
+  /**
+   * drop snapshots of a closed client.
+   *
+   * @param clientId client id.
+   */
+  public synchronized void removeClient(String clientId) {
+    String prefix = clientId + "/";
+    Iterator<String> iterator = snapshots.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMConversationCallback;
+
+/**
+ * Folds updateData calls on the same conversation within a window into one updateInfoInBackground.
+ *
+ * Keys are last-writer-wins, a later Delete removes an earlier value and vice versa. Every
+ * caller is completed with the merged outcome. While a merged update is in flight, new updates
+ * of that conversation wait for it, so requests never overlap. An update carrying an operation
+ * resolved by server (Increment, AddUnique, ...) is never merged: the batch before it is sent at
+ * once, then the update is sent on its own. Disabled by default.
+ */
+public class ConversationUpdateMerger {
+  public interface Completion {
+    /**
+     * @param e        error of the merged update, null if succeeded.
+     * @param setData  merged keys which were set.
+     * @param unsetKeys merged keys which were deleted.
+     */
+    void onComplete(LCIMException e, Map<String, Object> setData, List<String> unsetKeys);
+  }
+
+  private static class Pending {
+    final LCIMConversation conversation;
+    final LinkedHashMap<String, Object> setData = new LinkedHashMap<>();
+    final LinkedHashSet<String> unsetKeys = new LinkedHashSet<>();
+    final List<Completion> completions = new ArrayList<>();
+    // no more updates are merged into it.
+    boolean sealed = false;
+
+    Pending(LCIMConversation conversation) {
+      this.conversation = conversation;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Map<String, ArrayDeque<Pending>> pendings = new HashMap<>();
+  private final Map<String, Runnable> flushes = new HashMap<>();
+  private final Set<String> inFlight = new HashSet<>();
+  private int window = 0;
+
+  /**
+   * @param windowMillis merge window in milliseconds, non-positive value disables merging.
+   */
+  public synchronized void setWindow(int windowMillis) {
+    this.window = windowMillis;
+  }
+
+  public synchronized boolean isEnabled() {
+    return window > 0;
+  }
+
+  /**
+   * @return true if setData contains an operation map, Delete is expected to be in unsetKeys.
+   */
+  public static boolean hasOperation(Map<String, Object> setData) {
+    for (Object value : setData.values()) {
+      if (value instanceof Map && null != ((Map) value).get("__op")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * queue an update of conversation.
+   *
+   * @param clientId     client id.
+   * @param conversation conversation instance.
+   * @param setData      keys to set.
+   * @param unsetKeys    keys to delete.
+   * @param completion   completion of this caller.
+   */
+  public synchronized void submit(String clientId, LCIMConversation conversation, Map<String, Object> setData,
+                                  List<String> unsetKeys, Completion completion) {
+    final String key = clientId + "/" + conversation.getConversationId();
+    ArrayDeque<Pending> queue = pendings.get(key);
+    if (null == queue) {
+      queue = new ArrayDeque<>();
+      pendings.put(key, queue);
+    }
+    boolean operation = hasOperation(setData);
+    Pending pending = queue.peekLast();
+    if (operation || null == pending || pending.sealed) {
+      if (null != pending) {
+        pending.sealed = true;
+      }
+      pending = new Pending(conversation);
+      pending.sealed = operation;
+      queue.add(pending);
+    }
+    for (Map.Entry<String, Object> entry : setData.entrySet()) {
+      pending.unsetKeys.remove(entry.getKey());
+      pending.setData.put(entry.getKey(), entry.getValue());
+    }
+    for (String unsetKey : unsetKeys) {
+      pending.setData.remove(unsetKey);
+      pending.unsetKeys.add(unsetKey);
+    }
+    pending.completions.add(completion);
+    schedule(key);
+  }
+
+  // called with lock held.
+  private void schedule(final String key) {
+    ArrayDeque<Pending> queue = pendings.get(key);
+    if (inFlight.contains(key) || null == queue || queue.isEmpty()) {
+      return;
+    }
+    boolean sealed = queue.peekFirst().sealed;
+    Runnable scheduled = flushes.get(key);
+    if (null != scheduled) {
+      if (!sealed) {
+        return;
+      }
+      handler.removeCallbacks(scheduled);
+    }
+    Runnable flush = new Runnable() {
+      @Override
+      public void run() {
+        flush(key);
+      }
+    };
+    flushes.put(key, flush);
+    // nothing more is merged into a sealed batch, no need to wait.
+    handler.postDelayed(flush, sealed ? 0 : window);
+  }
+
+  private void flush(final String key) {
+    final Pending pending;
+    synchronized (this) {
+      flushes.remove(key);
+      ArrayDeque<Pending> queue = pendings.get(key);
+      if (null == queue || inFlight.contains(key)) {
+        return;
+      }
+      pending = queue.poll();
+      if (queue.isEmpty()) {
+        pendings.remove(key);
+      }
+      if (null == pending) {
+        return;
+      }
+      inFlight.add(key);
+    }
+    for (Map.Entry<String, Object> entry : pending.setData.entrySet()) {
+      pending.conversation.setAttribute(entry.getKey(), entry.getValue());
+    }
+    for (String unsetKey : pending.unsetKeys) {
+      pending.conversation.remove(unsetKey);
+    }
+    pending.conversation.updateInfoInBackground(new LCIMConversationCallback() {
+      @Override
+      public void done(LCIMException e) {
+        List<String> unsetKeys = new ArrayList<>(pending.unsetKeys);
+        for (Completion completion : pending.completions) {
+          completion.onComplete(e, pending.setData, unsetKeys);
+        }
+        synchronized (ConversationUpdateMerger.this) {
+          inFlight.remove(key);
+          schedule(key);
+        }
+      }
+    });
+  }
+}
@@ -32,10 +32,45 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   private static final String Member_Event_Other_Blocked = "members-blocked";
   private static final String Member_Event_Other_Unblocked = "members-unblocked";
   private IMEventNotification listener;
+  private ConversationSnapshots snapshots;
+  private MemberCountCache memberCounts;
+  private ModerationMirror moderation;
+  private ReceiptTimestampCache receipts;
 
 
   public DefaultConversationEventHandler(IMEventNotification listener) {
+    this(listener, null, null, null, null);
+  }
+
+  public DefaultConversationEventHandler(IMEventNotification listener, ConversationSnapshots snapshots,
+                                         MemberCountCache memberCounts, ModerationMirror moderation,
+                                         ReceiptTimestampCache receipts) {
     this.listener = listener;
+    this.snapshots = snapshots;
+    this.memberCounts = memberCounts;
+    this.moderation = moderation;
+    this.receipts = receipts;
+  }
+
+  private void applyModeration(LCIMClient client, LCIMConversation conversation, String kind,
+                               List<String> members, boolean added) {
+    if (null != this.moderation) {
+      this.moderation.apply(client.getClientId(), conversation.getConversationId(), kind, members, added);
+    }
+  }
+
+  /**
+   * @return whether a member updated event param is about the client or other members joining.
+   */
+  static boolean isJoinEvent(Map<String, Object> param) {
+    Object operation = param.get(Common.Param_Conv_Operation);
+    return Member_Event_Self_Joined.equals(operation) || Member_Event_Other_Joined.equals(operation);
+  }
+
+  private void adjustMemberCount(LCIMClient client, LCIMConversation conversation, int delta) {
+    if (null != this.memberCounts) {
+      this.memberCounts.adjust(client.getClientId(), conversation.getConversationId(), delta);
+    }
   }
 
   /**
@@ -51,6 +86,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onMemberLeft(LCIMClient client, LCIMConversation conversation,
                            List<String> members, String kickedBy) {
     LOGGER.d("Notification --- memberLeft. conversation:" + conversation.getConversationId());
+    adjustMemberCount(client, conversation, null == members ? 0 : -members.size());
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -77,6 +113,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onMemberJoined(LCIMClient client, LCIMConversation conversation,
                              List<String> members, String invitedBy) {
     LOGGER.d("Notification --- memberJoined. conversation:" + conversation.getConversationId());
+    adjustMemberCount(client, conversation, null == members ? 0 : members.size());
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -101,6 +138,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onKicked(LCIMClient client, LCIMConversation conversation, String kickedBy) {
     LOGGER.d("Notification --- " + " you are kicked from conversation:"
         + conversation.getConversationId() + " by " + kickedBy);
+    adjustMemberCount(client, conversation, -1);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -125,6 +163,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onInvited(LCIMClient client, LCIMConversation conversation, String operator) {
     LOGGER.d("Notification --- " + " you are invited to conversation:"
         + conversation.getConversationId() + " by " + operator);
+    adjustMemberCount(client, conversation, 1);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -146,6 +185,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onMuted(LCIMClient client, LCIMConversation conversation, String operator) {
     LOGGER.d("Notification --- " + " you are muted by " + operator );
+    applyModeration(client, conversation, ModerationMirror.Kind_Muted, Arrays.asList(client.getClientId()), true);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -166,6 +206,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onUnmuted(LCIMClient client, LCIMConversation conversation, String operator) {
     LOGGER.d("Notification --- " + " you are unmuted by " + operator );
+    applyModeration(client, conversation, ModerationMirror.Kind_Muted, Arrays.asList(client.getClientId()), false);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -187,6 +228,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onMemberMuted(LCIMClient client, LCIMConversation conversation, List<String> members, String operator){
     LOGGER.d("Notification --- " + operator + " muted members: " + StringUtil.join(", ", members));
+    applyModeration(client, conversation, ModerationMirror.Kind_Muted, members, true);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -210,6 +252,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onMemberUnmuted(LCIMClient client, LCIMConversation conversation,
                               List<String> members, String operator){
     LOGGER.d("Notification --- " + operator + " unmuted members: " + StringUtil.join(", ", members));
+    applyModeration(client, conversation, ModerationMirror.Kind_Muted, members, false);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -231,6 +274,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onBlocked(LCIMClient client, LCIMConversation conversation, String operator) {
     LOGGER.d("Notification --- " + " you are blocked by " + operator );
+    applyModeration(client, conversation, ModerationMirror.Kind_Blocked, Arrays.asList(client.getClientId()), true);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -251,6 +295,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onUnblocked(LCIMClient client, LCIMConversation conversation, String operator) {
     LOGGER.d("Notification --- " + " you are unblocked by " + operator );
+    applyModeration(client, conversation, ModerationMirror.Kind_Blocked, Arrays.asList(client.getClientId()), false);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -273,6 +318,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onMemberBlocked(LCIMClient client, LCIMConversation conversation,
                               List<String> members, String operator){
     LOGGER.d("Notification --- " + operator + " blocked members: " + StringUtil.join(", ", members));
+    applyModeration(client, conversation, ModerationMirror.Kind_Blocked, members, true);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -296,6 +342,7 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
   public void onMemberUnblocked(LCIMClient client, LCIMConversation conversation,
                                 List<String> members, String operator){
     LOGGER.d("Notification --- " + operator + " unblocked members: " + StringUtil.join(", ", members));
+    applyModeration(client, conversation, ModerationMirror.Kind_Blocked, members, false);
     if (null != this.listener) {
       Map<String, Object> param = new HashMap<>();
       param.put(Common.Param_Client_Id, client.getClientId());
@@ -334,6 +381,10 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onLastDeliveredAtUpdated(LCIMClient client, LCIMConversation conversation) {
     LOGGER.d("Notification --- lastDeliveredAt was updated. conversationId: " + conversation.getConversationId());
+    if (null != this.receipts) {
+      this.receipts.updateDeliveredAt(client.getClientId(), conversation.getConversationId(),
+          conversation.getLastDeliveredAt());
+    }
     if (null != this.listener) {
       HashMap<String, Object> param = new HashMap<>();
       param.put(Common.Param_Conv_Id, conversation.getConversationId());
@@ -348,6 +399,10 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
    */
   public void onLastReadAtUpdated(LCIMClient client, LCIMConversation conversation) {
     LOGGER.d("Notification --- lastReadAt was updated. conversationId: " + conversation.getConversationId());
+    if (null != this.receipts) {
+      this.receipts.updateReadAt(client.getClientId(), conversation.getConversationId(),
+          conversation.getLastReadAt());
+    }
     if (null != this.listener) {
       HashMap<String, Object> param = new HashMap<>();
       param.put(Common.Param_Conv_Id, conversation.getConversationId());
@@ -424,7 +479,11 @@ public class DefaultConversationEventHandler extends LCIMConversationEventHandle
       param.put(Common.Param_Conv_Id, conversation.getConversationId());
       param.put(Common.Param_Operator, operator);
       param.put(Common.Param_Conv_Attributes, attr);
-      param.put(Common.Param_RawData, Common.wrapConversation(conversation));
+      if (null != this.snapshots) {
+        this.snapshots.fillChange(client.getClientId(), conversation, attr, param);
+      } else {
+        param.put(Common.Param_RawData, Common.wrapConversation(conversation));
+      }
       param.put(Common.Param_Update_Time, StringUtil.stringFromDate(new Date()));
       this.listener.notify(Common.Method_Conv_Updated, param);
     }
@@ -11,9 +11,18 @@ import cn.leancloud.im.v2.LCIMMessageHandler;
 public class DefaultMessageHandler extends LCIMMessageHandler {
 
   private IMEventNotification listener;
+  private TransientMessageBuffer transientBuffer;
+  private PluginMetrics metrics;
 
   public DefaultMessageHandler(IMEventNotification listener) {
+    this(listener, null, null);
+  }
+
+  public DefaultMessageHandler(IMEventNotification listener, TransientMessageBuffer transientBuffer,
+                               PluginMetrics metrics) {
     this.listener = listener;
+    this.transientBuffer = transientBuffer;
+    this.metrics = metrics;
   }
 
   /**
@@ -32,6 +41,14 @@ public class DefaultMessageHandler extends LCIMMessageHandler {
       Map<String, Object> msgData = Common.wrapMessage(message);
       msgData.put(Common.Param_Client_Id, client.getClientId());
       msgData.put(Common.Param_Conv_Id, conversation.getConversationId());
+      if (null != this.metrics) {
+        this.metrics.getDeliveryTracer().onReceived(msgData, message.getTimestamp());
+        this.metrics.getConnectionMonitor().onMessage(client.getClientId());
+      }
+      if (null != this.transientBuffer && conversation.isTransient()
+          && this.transientBuffer.offer(client.getClientId(), conversation.getConversationId(), message.getFrom(), msgData)) {
+        return;
+      }
       param.put(Common.Param_Message_Raw, msgData);
       this.listener.notify(Common.Method_Message_Received, param);
     }
@@ -0,0 +1,179 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency of each leg of message delivery.
+ *
+ * Inbound:  server timestamp -> DefaultMessageHandler.onMessage -> sent on channel.
+ *           The second leg includes time spent in TransientMessageBuffer, the receive time is
+ *           stamped into the message and removed again before it's sent.
+ * Outbound: Dart call -> onMethodCall -> sendMessage acknowledged.
+ *
+ * Percentiles of every leg are kept natively. When a sample rate is set, every Nth message
+ * also carries a "trace" map with the raw timestamps, so Dart can add its own legs.
+ * Server and Dart timestamps come from other clocks, so those legs include clock skew.
+ */
+public class DeliveryTracer {
+  public static final String Field_Trace = "trace";
+  public static final String Field_Server_Timestamp = "serverTimestamp";
+  public static final String Field_Received_At = "receivedAt";
+  public static final String Field_Dispatched_At = "dispatchedAt";
+  public static final String Field_Call_Time = "callTime";
+  public static final String Field_Acked_At = "ackedAt";
+  private static final String Field_Received_Nanos = "receivedNanos";
+
+  private final LatencyHistogram serverToNative = new LatencyHistogram();
+  private final LatencyHistogram nativeToChannel = new LatencyHistogram();
+  private final LatencyHistogram dartToNative = new LatencyHistogram();
+  private final LatencyHistogram nativeToAck = new LatencyHistogram();
+  private int sampleRate = 0;
+  private long inboundCount = 0;
+  private long outboundCount = 0;
+
+  /**
+   * attach trace fields to every sampleRate-th message.
+   *
+   * @param sampleRate sample rate, non-positive value disables per-message trace.
+   */
+  public synchronized void setSampleRate(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  private synchronized boolean sampleInbound() {
+    inboundCount++;
+    return sampleRate > 0 && 0 == inboundCount % sampleRate;
+  }
+
+  private synchronized boolean sampleOutbound() {
+    outboundCount++;
+    return sampleRate > 0 && 0 == outboundCount % sampleRate;
+  }
+
+  /**
+   * called when native SDK hands a message to the plugin.
+   *
+   * @param msgData         wrapped message.
+   * @param serverTimestamp message timestamp assigned by server.
+   */
+  public void onReceived(Map<String, Object> msgData, long serverTimestamp) {
+    long now = System.currentTimeMillis();
+    msgData.put(Field_Received_Nanos, System.nanoTime());
+    if (serverTimestamp > 0) {
+      serverToNative.record((now - serverTimestamp) * 1000);
+    }
+    if (sampleInbound()) {
+      Map<String, Object> trace = new HashMap<>();
+      trace.put(Field_Server_Timestamp, serverTimestamp);
+      trace.put(Field_Received_At, now);
+      msgData.put(Field_Trace, trace);
+    }
+  }
+
+  /**
+   * called right before a message event is sent on channel.
+   *
+   * @param method      event method.
+   * @param param       event param.
+   * @param queuedNanos time since the event was queued in dispatcher, used if a message has no receive time.
+   */
+  public void onDispatched(String method, Object param, long queuedNanos) {
+    long now = System.nanoTime();
+    for (Object message : messagesOf(method, param)) {
+      Object receivedNanos = ((Map) message).remove(Field_Received_Nanos);
+      nativeToChannel.recordNanos(receivedNanos instanceof Long ? now - (Long) receivedNanos : queuedNanos);
+      stampDispatched(message);
+    }
+  }
+
+  /**
+   * called when a message event is parked in replay buffer instead of being sent, it's not timed.
+   *
+   * @param method event method.
+   * @param param  event param.
+   */
+  public void onBuffered(String method, Object param) {
+    for (Object message : messagesOf(method, param)) {
+      ((Map) message).remove(Field_Received_Nanos);
+    }
+  }
+
+  private static List<Object> messagesOf(String method, Object param) {
+    List<Object> result = new ArrayList<>();
+    if (!(param instanceof Map)) {
+      return result;
+    }
+    if (Common.Method_Message_Received.equals(method)) {
+      Object message = ((Map) param).get(Common.Param_Message_Raw);
+      if (message instanceof Map) {
+        result.add(message);
+      }
+    } else if (Common.Method_Message_Batch_Received.equals(method)) {
+      Object messages = ((Map) param).get(Common.Param_Messages);
+      if (messages instanceof List) {
+        for (Object message : (List) messages) {
+          if (message instanceof Map) {
+            result.add(message);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void stampDispatched(Object message) {
+    Object trace = ((Map) message).get(Field_Trace);
+    if (trace instanceof Map) {
+      ((Map<String, Object>) trace).put(Field_Dispatched_At, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * called when sendMessage arrives from Dart.
+   *
+   * @param callTime time of the Dart call in milliseconds, 0 if unknown.
+   * @return start time for onSendAcked.
+   */
+  public long onSendStarted(long callTime) {
+    if (callTime > 0) {
+      dartToNative.record((System.currentTimeMillis() - callTime) * 1000);
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * called when sendMessage is acknowledged by server.
+   *
+   * @param msgData   wrapped message returned to Dart.
+   * @param callTime  time of the Dart call in milliseconds, 0 if unknown.
+   * @param startNanos value returned by onSendStarted.
+   */
+  public void onSendAcked(Map<String, Object> msgData, long callTime, long startNanos) {
+    long elapsed = System.nanoTime() - startNanos;
+    nativeToAck.recordNanos(elapsed);
+    if (null != msgData && sampleOutbound()) {
+      long now = System.currentTimeMillis();
+      Map<String, Object> trace = new HashMap<>();
+      trace.put(Field_Call_Time, callTime);
+      trace.put(Field_Received_At, now - elapsed / 1000000);
+      trace.put(Field_Acked_At, now);
+      msgData.put(Field_Trace, trace);
+    }
+  }
+
+  public Map<String, Object> snapshot() {
+    Map<String, Object> inbound = new HashMap<>();
+    inbound.put("serverToNative", serverToNative.snapshot());
+    inbound.put("nativeToChannel", nativeToChannel.snapshot());
+    Map<String, Object> outbound = new HashMap<>();
+    outbound.put("dartToNative", dartToNative.snapshot());
+    outbound.put("nativeToAck", nativeToAck.snapshot());
+    Map<String, Object> result = new HashMap<>();
+    result.put("inbound", inbound);
+    result.put("outbound", outbound);
+    return result;
+  }
+}
@@ -0,0 +1,382 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Dispatches native events to Dart on the main looper through two priority lanes.
+ *
+ * Control events (signature requests and session state changes) always go out before
+ * bulk events (messages, conversation updates, unread counts). Bulk events are sent in
+ * slices so that a burst never holds the main looper, and a control event that arrives
+ * in the middle of a burst overtakes the rest of it.
+ *
+ * Every attached Flutter engine has its own Route. One-way events go to every route whose
+ * rule accepts them, events expecting a result (signature requests) and replay batches go
+ * only to the engine that opened the client.
+ *
+ * One-way events of a client are buffered until an engine starts opening that client
+ * (bindClient), also while engines are attached, because Dart drops events of clients it
+ * doesn't know yet. Dart registers the client before it calls openClient, so events arriving
+ * while the open is in flight go out live. bindClient puts the replay batch ahead of every
+ * queued event, so Dart always gets buffered events before live ones. unbindClient undoes a
+ * bind whose open failed.
+ */
+public class EventDispatcher {
+  public static final int DEFAULT_BULK_SLICE = 64;
+
+  public static final String Lane_Control = "control";
+  public static final String Lane_Bulk = "bulk";
+
+  private static final Set<String> CONTROL_METHODS = new HashSet<>(Arrays.asList(
+      Common.Method_Sign_SessionOpen,
+      Common.Method_Sign_Conversation,
+      Common.Method_Client_Offline,
+      Common.Method_Client_Disconnected,
+      Common.Method_Client_Resumed,
+      Common.Method_Client_Opened,
+      Common.Method_Client_State_Changed));
+
+  /**
+   * channel of one attached engine, with optional filters on method and conversation id.
+   */
+  public static class Route {
+    final MethodChannel channel;
+    Set<String> methods = null;
+    Set<String> conversationIds = null;
+
+    Route(MethodChannel channel) {
+      this.channel = channel;
+    }
+
+    boolean accepts(String method, Object param) {
+      if (null != methods && !methods.contains(method)) {
+        return false;
+      }
+      if (null != conversationIds && param instanceof Map) {
+        Object conversationId = ((Map) param).get(Common.Param_Conv_Id);
+        return null == conversationId || conversationIds.contains(conversationId);
+      }
+      return true;
+    }
+  }
+
+  private static class PendingEvent {
+    final String method;
+    final Object param;
+    final MethodChannel.Result callback;
+    final String ownerClientId;
+    final long queuedAt = System.nanoTime();
+
+    PendingEvent(String method, Object param, MethodChannel.Result callback, String ownerClientId) {
+      this.method = method;
+      this.param = param;
+      this.callback = callback;
+      this.ownerClientId = ownerClientId;
+    }
+  }
+
+  private static class Lane {
+    final ArrayDeque<PendingEvent> queue = new ArrayDeque<>();
+    long dispatched = 0;
+    int maxDepth = 0;
+
+    void add(PendingEvent event) {
+      queue.addLast(event);
+      if (queue.size() > maxDepth) {
+        maxDepth = queue.size();
+      }
+    }
+
+    Map<String, Object> stats() {
+      Map<String, Object> result = new HashMap<>();
+      result.put("depth", queue.size());
+      result.put("maxDepth", maxDepth);
+      result.put("dispatched", dispatched);
+      return result;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final PluginMetrics metrics;
+  private final Lane controlLane = new Lane();
+  private final Lane bulkLane = new Lane();
+  private final EventReplayBuffer replayBuffer = new EventReplayBuffer();
+  private final List<Route> routes = new ArrayList<>();
+  private final Map<String, Route> clientOwners = new HashMap<>();
+  private int bulkSlice = DEFAULT_BULK_SLICE;
+  private boolean drainScheduled = false;
+
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  public EventDispatcher(PluginMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * start routing events to an engine, by default it receives every event.
+   *
+   * @param channel plugin channel of the engine.
+   * @return route handle for rule changes and detach.
+   */
+  public synchronized Route attach(MethodChannel channel) {
+    Route route = new Route(channel);
+    routes.add(route);
+    return route;
+  }
+
+  public synchronized void detach(Route route) {
+    routes.remove(route);
+    Iterator<Route> it = clientOwners.values().iterator();
+    while (it.hasNext()) {
+      if (it.next() == route) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * restrict which events an engine receives.
+   *
+   * @param route           route of the engine.
+   * @param methods         accepted event methods, null for all.
+   * @param conversationIds accepted conversations, null for all. events without conversation are not filtered.
+   */
+  public synchronized void setRule(Route route, List<String> methods, List<String> conversationIds) {
+    route.methods = null == methods ? null : new HashSet<>(methods);
+    route.conversationIds = null == conversationIds ? null : new HashSet<>(conversationIds);
+  }
+
+  /**
+   * mark the engine that opened a client, it answers signature requests and receives replay batches.
+   * events buffered for the client so far are sent to it as one replay batch, before any live event.
+   *
+   * @param clientId client id.
+   * @param route    route of the engine.
+   */
+  public synchronized void bindClient(String clientId, Route route) {
+    if (null == route) {
+      return;
+    }
+    clientOwners.put(clientId, route);
+    Map<String, Object> param = replayBuffer.take(clientId);
+    if (null == param) {
+      return;
+    }
+    // buffered events are older than everything queued in both lanes.
+    controlLane.queue.addFirst(new PendingEvent(Common.Method_Event_Replay, param, null, clientId));
+    handler.postAtFrontOfQueue(drainTask);
+    drainScheduled = true;
+  }
+
+  /**
+   * undo bindClient after the open failed, events of the client are buffered again and
+   * whatever is buffered so far is dropped.
+   *
+   * @param clientId client id.
+   * @param route    route of the engine that tried to open the client.
+   */
+  public synchronized void unbindClient(String clientId, Route route) {
+    if (clientOwners.get(clientId) == route) {
+      clientOwners.remove(clientId);
+    }
+    replayBuffer.take(clientId);
+  }
+
+  public synchronized boolean isBound(String clientId) {
+    return clientOwners.containsKey(clientId);
+  }
+
+  public EventReplayBuffer getReplayBuffer() {
+    return this.replayBuffer;
+  }
+
+  public synchronized boolean isAttached() {
+    return !routes.isEmpty();
+  }
+
+  public synchronized void setBulkSlice(int bulkSlice) {
+    this.bulkSlice = bulkSlice > 0 ? bulkSlice : DEFAULT_BULK_SLICE;
+  }
+
+  public static boolean isControlEvent(String method) {
+    return CONTROL_METHODS.contains(method);
+  }
+
+  /**
+   * queue an event for Dart, can be called from any thread.
+   *
+   * @param method   method name.
+   * @param param    arguments.
+   * @param callback result callback, nullable.
+   */
+  public void dispatch(String method, Object param, MethodChannel.Result callback) {
+    dispatch(new PendingEvent(method, param, callback, null != callback ? clientIdOf(param) : null));
+  }
+
+  private void dispatch(PendingEvent event) {
+    String method = event.method;
+    synchronized (this) {
+      if (isControlEvent(method)) {
+        controlLane.add(event);
+        // control traffic jumps over the bulk drain that may already be queued on the looper.
+        handler.postAtFrontOfQueue(drainTask);
+        drainScheduled = true;
+        return;
+      }
+      bulkLane.add(event);
+      if (drainScheduled) {
+        return;
+      }
+      drainScheduled = true;
+    }
+    handler.post(drainTask);
+  }
+
+  /**
+   * snapshot of per-lane queue depth.
+   *
+   * @return lane name to {depth, maxDepth, dispatched}.
+   */
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> result = new HashMap<>();
+    result.put(Lane_Control, controlLane.stats());
+    result.put(Lane_Bulk, bulkLane.stats());
+    result.put("replay", replayBuffer.size());
+    result.put("routes", routes.size());
+    return result;
+  }
+
+  private void drain() {
+    while (true) {
+      PendingEvent event;
+      List<Route> targets;
+      synchronized (this) {
+        event = controlLane.queue.pollFirst();
+        if (null == event) {
+          break;
+        }
+        controlLane.dispatched++;
+        targets = resolveTargets(event);
+        if (null == targets && bufferIfUnbound(event)) {
+          continue;
+        }
+      }
+      send(targets, event);
+    }
+
+    int sent = 0;
+    while (true) {
+      PendingEvent event;
+      List<Route> targets;
+      synchronized (this) {
+        if (sent >= bulkSlice || !controlLane.queue.isEmpty()) {
+          // yield to the looper, the next drain picks up control events first.
+          handler.post(drainTask);
+          return;
+        }
+        event = bulkLane.queue.pollFirst();
+        if (null == event) {
+          drainScheduled = false;
+          return;
+        }
+        bulkLane.dispatched++;
+        targets = resolveTargets(event);
+        if (null == targets && bufferIfUnbound(event)) {
+          continue;
+        }
+      }
+      send(targets, event);
+      sent++;
+    }
+  }
+
+  // called with lock held, so that bindClient can't take the buffer between resolve and add.
+  private boolean bufferIfUnbound(PendingEvent event) {
+    if (null != event.callback) {
+      return false;
+    }
+    if (null != metrics) {
+      metrics.getDeliveryTracer().onBuffered(event.method, event.param);
+    }
+    replayBuffer.add(event.method, event.param);
+    return true;
+  }
+
+  /**
+   * @return routes to send event to, null if event has to wait in replay buffer (or fail, if it expects a result).
+   */
+  private List<Route> resolveTargets(PendingEvent event) {
+    if (routes.isEmpty()) {
+      return null;
+    }
+    if (null == event.callback) {
+      String clientId = clientIdOf(event.param);
+      if (null != clientId && !clientOwners.containsKey(clientId)) {
+        // Dart doesn't know the client until it calls openClient.
+        return null;
+      }
+    }
+    if (null != event.ownerClientId) {
+      Route owner = clientOwners.get(event.ownerClientId);
+      return Collections.singletonList(null != owner ? owner : routes.get(0));
+    }
+    List<Route> result = new ArrayList<>();
+    for (Route route : routes) {
+      if (route.accepts(event.method, event.param)) {
+        result.add(route);
+      }
+    }
+    return result;
+  }
+
+  private void send(List<Route> targets, PendingEvent event) {
+    if (null == targets) {
+      // nobody can answer while detached, fail fast instead of letting the caller time out.
+      event.callback.notImplemented();
+      return;
+    }
+    if (null != metrics) {
+      metrics.getDeliveryTracer().onDispatched(event.method, event.param, System.nanoTime() - event.queuedAt);
+    }
+    for (Route route : targets) {
+      long start = System.nanoTime();
+      if (null == event.callback) {
+        route.channel.invokeMethod(event.method, event.param);
+      } else {
+        route.channel.invokeMethod(event.method, event.param, event.callback);
+      }
+      if (null != metrics) {
+        metrics.onEventSent(System.nanoTime() - start);
+      }
+    }
+  }
+
+  private static String clientIdOf(Object param) {
+    if (param instanceof Map) {
+      Object clientId = ((Map) param).get(Common.Param_Client_Id);
+      if (clientId instanceof String) {
+        return (String) clientId;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,270 @@
+package cn.leancloud.plugin;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded buffer for events of clients which no attached Flutter engine has opened yet.
+ *
+ * Events are kept in arrival order and handed back per client once Dart opens that
+ * client again. The oldest events are dropped when the buffer is full. Optionally the
+ * buffer is mirrored to a file so that events survive a process restart.
+ *
+ * The file is a log of length-prefixed records encoded with LeanCloudMessageCodec, the codec
+ * of the plugin channel, so replayed arguments keep the types live events have (byte[], long).
+ * New events are appended, the log is rewritten only to drop taken or overflowed events.
+ */
+public class EventReplayBuffer {
+  private final static String TAG = EventReplayBuffer.class.getSimpleName();
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  private static final String Field_Method = "method";
+  private static final String Field_Args = "args";
+
+  private final ArrayDeque<Map<String, Object>> events = new ArrayDeque<>();
+  private final List<Map<String, Object>> appended = new ArrayList<>();
+  private final LeanCloudMessageCodec codec = new LeanCloudMessageCodec();
+  private final Map<String, Integer> droppedCounts = new HashMap<>();
+  private int capacity = DEFAULT_CAPACITY;
+  private File persistFile = null;
+  private boolean saveScheduled = false;
+  private boolean rewriteScheduled = false;
+  private int fileRecords = 0;
+  private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+
+  private final Runnable saveTask = new Runnable() {
+    @Override
+    public void run() {
+      save();
+    }
+  };
+
+  public synchronized void setCapacity(int capacity) {
+    this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+    while (events.size() > this.capacity) {
+      countDropped(events.pollFirst());
+    }
+  }
+
+  /**
+   * mirror buffered events to file, events already stored in file are loaded at once.
+   *
+   * @param file target file, null to disable persistence.
+   */
+  public synchronized void setPersistFile(File file) {
+    if (null == this.persistFile && null != file && file.exists()) {
+      load(file);
+    }
+    this.persistFile = file;
+    scheduleRewrite();
+  }
+
+  public synchronized int size() {
+    return events.size();
+  }
+
+  /**
+   * buffer one event. events without client (e.g. metrics snapshots) are dropped, they
+   * would never be taken.
+   */
+  public synchronized void add(String method, Object param) {
+    Map<String, Object> event = new HashMap<>();
+    event.put(Field_Method, method);
+    event.put(Field_Args, param);
+    if (null == clientIdOf(event)) {
+      return;
+    }
+    events.addLast(event);
+    while (events.size() > capacity) {
+      countDropped(events.pollFirst());
+    }
+    if (null != persistFile && !rewriteScheduled) {
+      appended.add(event);
+    }
+    scheduleSave();
+  }
+
+  /**
+   * take all buffered events of one client, in arrival order.
+   *
+   * @param clientId client id.
+   * @return replay param ({clientId, events, dropped}), or null if nothing buffered.
+   */
+  public synchronized Map<String, Object> take(String clientId) {
+    List<Map<String, Object>> clientEvents = new ArrayList<>();
+    Iterator<Map<String, Object>> it = events.iterator();
+    while (it.hasNext()) {
+      Map<String, Object> event = it.next();
+      if (clientId.equals(clientIdOf(event))) {
+        clientEvents.add(event);
+        it.remove();
+      }
+    }
+    Integer dropped = droppedCounts.remove(clientId);
+    if (clientEvents.isEmpty() && null == dropped) {
+      return null;
+    }
+    if (!clientEvents.isEmpty()) {
+      scheduleRewrite();
+    }
+    Map<String, Object> result = new HashMap<>();
+    result.put(Common.Param_Client_Id, clientId);
+    result.put(Common.Param_Events, clientEvents);
+    result.put(Common.Param_Dropped, null == dropped ? 0 : dropped);
+    return result;
+  }
+
+  private void countDropped(Map<String, Object> event) {
+    String clientId = clientIdOf(event);
+    if (null == clientId) {
+      return;
+    }
+    Integer count = droppedCounts.get(clientId);
+    droppedCounts.put(clientId, null == count ? 1 : count + 1);
+  }
+
+  private static String clientIdOf(Map<String, Object> event) {
+    Object args = event.get(Field_Args);
+    if (args instanceof Map) {
+      Object clientId = ((Map) args).get(Common.Param_Client_Id);
+      if (clientId instanceof String) {
+        return (String) clientId;
+      }
+    }
+    return null;
+  }
+
+  private void scheduleSave() {
+    if (null == persistFile || saveScheduled) {
+      return;
+    }
+    saveScheduled = true;
+    saveExecutor.execute(saveTask);
+  }
+
+  // removals (take, overflow) are not logged, so the log is compacted after a take and
+  // once it holds twice the capacity.
+  private void scheduleRewrite() {
+    rewriteScheduled = true;
+    appended.clear();
+    scheduleSave();
+  }
+
+  private void save() {
+    File file;
+    boolean rewrite;
+    List<Map<String, Object>> records;
+    synchronized (this) {
+      saveScheduled = false;
+      file = persistFile;
+      if (null == file) {
+        appended.clear();
+        return;
+      }
+      if (!rewriteScheduled && fileRecords + appended.size() > 2 * capacity) {
+        rewriteScheduled = true;
+      }
+      rewrite = rewriteScheduled;
+      records = new ArrayList<>(rewrite ? events : appended);
+      rewriteScheduled = false;
+      appended.clear();
+      fileRecords = rewrite ? records.size() : fileRecords + records.size();
+    }
+    DataOutputStream os = null;
+    try {
+      os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !rewrite)));
+      for (Map<String, Object> event : records) {
+        byte[] record;
+        try {
+          ByteBuffer buffer = codec.encodeMessage(event);
+          buffer.flip();
+          record = new byte[buffer.remaining()];
+          buffer.get(record);
+        } catch (IllegalArgumentException ex) {
+          Log.w(TAG, "skip unencodable event " + event.get(Field_Method) + ". cause: " + ex.getMessage());
+          continue;
+        }
+        os.writeInt(record.length);
+        os.write(record);
+      }
+    } catch (IOException ex) {
+      Log.w(TAG, "failed to save replay buffer. cause: " + ex.getMessage());
+    } finally {
+      closeQuietly(os);
+    }
+  }
+
+  private void load(File file) {
+    DataInputStream is = null;
+    ArrayDeque<Map<String, Object>> current = new ArrayDeque<>(events);
+    events.clear();
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      while (true) {
+        int length;
+        try {
+          length = is.readInt();
+        } catch (EOFException ex) {
+          break;
+        }
+        if (length < 0 || length > file.length()) {
+          // not a record log, e.g. a file left by an older version.
+          break;
+        }
+        byte[] record = new byte[length];
+        // a torn record at the tail (process killed while writing) ends the log.
+        is.readFully(record);
+        Object event = codec.decodeMessage(ByteBuffer.wrap(record));
+        if (event instanceof Map && null != clientIdOf((Map<String, Object>) event)) {
+          events.addLast((Map<String, Object>) event);
+        }
+      }
+    } catch (java.lang.Exception ex) {
+      Log.w(TAG, "failed to load replay buffer. cause: " + ex.getMessage());
+    } finally {
+      closeQuietly(is);
+    }
+    // events stored by previous process come first.
+    events.addAll(current);
+    while (events.size() > capacity) {
+      countDropped(events.pollFirst());
+    }
+  }
+
+  // for tests: wait until saves scheduled so far are written.
+  void awaitSaved() throws java.lang.Exception {
+    saveExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get();
+  }
+
+  private static void closeQuietly(java.io.Closeable closeable) {
+    if (null != closeable) {
+      try {
+        closeable.close();
+      } catch (IOException ex) {
+        ;
+      }
+    }
+  }
+}
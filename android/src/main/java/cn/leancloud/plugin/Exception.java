@@ -7,4 +7,8 @@ public class Exception {
   public static final String ErrorMsg_Invalid_ClientId = "Client id is null or invalid.";
 
   public static final String ErrorMsg_Invalid_ConversationId = "Conversation id is null or invalid.";
+
+  public static final int ErrorCode_Call_Rejected = 9100;
+  public static final String ErrorMsg_Call_Rejected = "Too many calls in flight, call rejected.";
+  public static final String ErrorMsg_Lanes_With_Burst = "Ordered lanes can't work with a send pacing burst above 1.";
 }
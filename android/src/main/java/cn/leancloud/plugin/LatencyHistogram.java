@@ -0,0 +1,77 @@
+package cn.leancloud.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size latency histogram with power-of-two microsecond buckets.
+ *
+ * Recording is O(1) and allocation free, percentiles are approximated by the upper
+ * bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+  private static final int BUCKET_COUNT = 40;
+
+  private final long[] buckets = new long[BUCKET_COUNT];
+  private long count = 0;
+  private long sumMicros = 0;
+  private long maxMicros = 0;
+
+  public synchronized void record(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    }
+    int index = 64 - Long.numberOfLeadingZeros(micros);
+    if (index >= BUCKET_COUNT) {
+      index = BUCKET_COUNT - 1;
+    }
+    buckets[index]++;
+    count++;
+    sumMicros += micros;
+    if (micros > maxMicros) {
+      maxMicros = micros;
+    }
+  }
+
+  public void recordNanos(long nanos) {
+    record(nanos / 1000);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * approximated percentile in milliseconds.
+   *
+   * @param percentile value in (0, 1].
+   * @return latency in milliseconds.
+   */
+  public synchronized double percentile(double percentile) {
+    if (0 == count) {
+      return 0;
+    }
+    long threshold = (long) Math.ceil(count * percentile);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += buckets[i];
+      if (seen >= threshold) {
+        long upperMicros = 0 == i ? 0 : (1L << i) - 1;
+        return Math.min(upperMicros, maxMicros) / 1000.0;
+      }
+    }
+    return maxMicros / 1000.0;
+  }
+
+  public synchronized Map<String, Object> snapshot() {
+    Map<String, Object> result = new HashMap<>();
+    result.put("count", count);
+    result.put("mean", 0 == count ? 0.0 : sumMicros / 1000.0 / count);
+    result.put("max", maxMicros / 1000.0);
+    result.put("total", sumMicros / 1000.0);
+    result.put("p50", percentile(0.5));
+    result.put("p90", percentile(0.9));
+    result.put("p99", percentile(0.99));
+    return result;
+  }
+}
@@ -1,7 +1,6 @@
 package cn.leancloud.plugin;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.content.Context;
 import android.util.Log;
 
 import cn.leancloud.im.v2.callback.LCIMConversationIterableResult;
@@ -45,7 +44,6 @@ import cn.leancloud.im.v2.callback.LCIMConversationQueryCallback;
 import cn.leancloud.im.v2.callback.LCIMMessageRecalledCallback;
 import cn.leancloud.im.v2.callback.LCIMMessageUpdatedCallback;
 import cn.leancloud.im.v2.callback.LCIMMessagesQueryCallback;
-import cn.leancloud.im.v2.callback.LCIMOperationFailure;
 import cn.leancloud.im.v2.callback.LCIMOperationPartiallySucceededCallback;
 import cn.leancloud.im.v2.messages.LCIMFileMessage;
 import cn.leancloud.im.v2.messages.LCIMRecalledMessage;
@@ -57,7 +55,6 @@ import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
-import io.flutter.plugin.common.StandardMethodCodec;
 
 /**
  * LeancloudPlugin
@@ -65,9 +62,48 @@ import io.flutter.plugin.common.StandardMethodCodec;
 public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         ClientStatusListener, IMEventNotification {
   private final static String TAG = LeancloudPlugin.class.getSimpleName();
+  private final static String REPLAY_FILE_NAME = "leancloud_plugin_replay.json";
+  // shared sink of IM events, every attached engine has its own instance for method calls.
   private final static LeancloudPlugin _INSTANCE = new LeancloudPlugin();
-  private static MethodChannel _CHANNEL = null;
-  private static Handler handler;
+  private final static TransientMessageBuffer _TRANSIENT_BUFFER = new TransientMessageBuffer(_INSTANCE);
+  private final static PluginMetrics _METRICS = new PluginMetrics();
+  private final static EventDispatcher _DISPATCHER = new EventDispatcher(_METRICS);
+  // resolves _CLIENT_PROVIDER per call, it's declared below and may be replaced by setClientProvider.
+  private final static ClientWarmup _WARMUP = new ClientWarmup(new ClientProvider() {
+    @Override
+    public LCIMClient getClient(String clientId, String tag) {
+      return _CLIENT_PROVIDER.getClient(clientId, tag);
+    }
+  });
+  private final static ConversationSnapshots _SNAPSHOTS = new ConversationSnapshots();
+  private final static ConversationUpdateMerger _UPDATE_MERGER = new ConversationUpdateMerger();
+  private final static ConversationQueryCache _QUERY_CACHE = new ConversationQueryCache();
+  private final static MemberCountCache _MEMBER_COUNTS = new MemberCountCache();
+  private final static ModerationMirror _MODERATION = new ModerationMirror();
+  private final static ReceiptTimestampCache _RECEIPTS = new ReceiptTimestampCache();
+  private final static ReadScheduler _READS = new ReadScheduler(_INSTANCE);
+  private final static ConversationLanes _LANES = new ConversationLanes();
+  private final static SendPacer _PACER = new SendPacer(_INSTANCE);
+  private static boolean eventHandlersRegistered = false;
+
+  /**
+   * source of LCIMClient instances, replaced by the load-test harness with stand-ins.
+   */
+  interface ClientProvider {
+    LCIMClient getClient(String clientId, String tag);
+  }
+
+  private final static ClientProvider DEFAULT_CLIENT_PROVIDER = new ClientProvider() {
+    @Override
+    public LCIMClient getClient(String clientId, String tag) {
+      return StringUtil.isEmpty(tag) ? LCIMClient.getInstance(clientId) : LCIMClient.getInstance(clientId, tag);
+    }
+  };
+  private static ClientProvider _CLIENT_PROVIDER = DEFAULT_CLIENT_PROVIDER;
+
+  private MethodChannel channel = null;
+  private BinaryMessenger messenger = null;
+  private EventDispatcher.Route route = null;
 
   @Override
   public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
@@ -86,20 +122,99 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
   // in the same class.
   public static void registerWith(Registrar registrar) {
     Log.d(TAG, "LeancloudPlugin#registerWith called.");
-    _initialize(registrar.messenger(), "leancloud_plugin");
+    new LeancloudPlugin()._initialize(registrar.messenger(), "leancloud_plugin");
+  }
+
+  /**
+   * inbound buffer for transient conversations, disabled by default.
+   *
+   * @return buffer instance, call configure() to enable it.
+   */
+  public static TransientMessageBuffer getTransientMessageBuffer() {
+    return _TRANSIENT_BUFFER;
+  }
+
+  /**
+   * prioritized dispatcher for events sent to Dart.
+   *
+   * @return dispatcher instance.
+   */
+  public static EventDispatcher getEventDispatcher() {
+    return _DISPATCHER;
+  }
+
+  /**
+   * keep events buffered while no engine is attached in a file under cache dir, so they
+   * can still be replayed after the process is restarted.
+   *
+   * @param context application context.
+   */
+  public static void enableReplayPersistence(Context context) {
+    _DISPATCHER.getReplayBuffer().setPersistFile(new File(context.getCacheDir(), REPLAY_FILE_NAME));
+  }
+
+  /**
+   * runtime metrics of method calls and events.
+   *
+   * @return metrics instance.
+   */
+  public static PluginMetrics getMetrics() {
+    return _METRICS;
+  }
+
+  static void setClientProvider(ClientProvider provider) {
+    _CLIENT_PROVIDER = null == provider ? DEFAULT_CLIENT_PROVIDER : provider;
   }
 
-  private static void _initialize(BinaryMessenger messenger, String name) {
-//    if (null == _CHANNEL) {
-    _CHANNEL = new MethodChannel(messenger, "leancloud_plugin", new StandardMethodCodec(new LeanCloudMessageCodec()));
-    _CHANNEL.setMethodCallHandler(_INSTANCE);
+  void attach(BinaryMessenger messenger) {
+    _initialize(messenger, "leancloud_plugin");
+  }
+
+  private void _initialize(BinaryMessenger messenger, String name) {
+    this.messenger = messenger;
+    channel = new MethodChannel(messenger, "leancloud_plugin", new MeteredMethodCodec(_METRICS));
+    channel.setMethodCallHandler(this);
+    route = _DISPATCHER.attach(channel);
 
-    LCIMMessageManager.registerDefaultMessageHandler(new DefaultMessageHandler(_INSTANCE));
-    LCIMMessageManager.setConversationEventHandler(new DefaultConversationEventHandler(_INSTANCE));
+    registerEventHandlers();
+  }
+
+  private static synchronized void registerEventHandlers() {
+    if (eventHandlersRegistered) {
+      return;
+    }
+    LCIMMessageManager.registerDefaultMessageHandler(newMessageHandler());
+    LCIMMessageManager.setConversationEventHandler(newConversationEventHandler());
     LCIMClient.setClientEventHandler(new DefaultClientEventHandler(_INSTANCE));
     LCIMOptions.getGlobalOptions().setSignatureFactory(DefaultSignatureFactory.getInstance());
-    handler = new Handler(Looper.getMainLooper());
-//    }
+    eventHandlersRegistered = true;
+  }
+
+  static DefaultMessageHandler newMessageHandler() {
+    return new DefaultMessageHandler(_INSTANCE, _TRANSIENT_BUFFER, _METRICS);
+  }
+
+  static DefaultConversationEventHandler newConversationEventHandler() {
+    return new DefaultConversationEventHandler(_INSTANCE, _SNAPSHOTS, _MEMBER_COUNTS, _MODERATION, _RECEIPTS);
+  }
+
+  /**
+   * open a client before Flutter engine starts, e.g. in Application#onCreate after LeanCloud.initialize.
+   * events are buffered until Dart opens the same client, and that openClient call resolves
+   * against this session instead of opening a new one. If Dart opens it with reconnect, or the
+   * pre-open fails, the client is opened again with the option of Dart.
+   * session open signature is not available here, because Dart is not running yet.
+   *
+   * @param clientId client id.
+   * @param tag      client tag, nullable.
+   */
+  public static void preOpenClient(String clientId, String tag) {
+    if (StringUtil.isEmpty(clientId)) {
+      Log.w(TAG, "ignore pre-open request, " + Exception.ErrorMsg_Invalid_ClientId);
+      return;
+    }
+    registerEventHandlers();
+    _WARMUP.open(clientId, tag);
   }
 
   private SignatureFactory generateSignatureFactory() {
@@ -125,28 +240,23 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         params.put(Common.Param_Client_Id, peerId);
         final Signature signature = new Signature();
         final CountDownLatch latch = new CountDownLatch(1);
-        handler.post(new Runnable() {
+        _DISPATCHER.dispatch(Common.Method_Sign_SessionOpen, params, new Result() {
+          @Override
+          public void success(Object result) {
+            fillResult2Signature(result, signature);
+            latch.countDown();
+          }
+
           @Override
-          public void run() {
-            _CHANNEL.invokeMethod(Common.Method_Sign_SessionOpen, params, new Result() {
-              @Override
-              public void success(Object result) {
-                fillResult2Signature(result, signature);
-                latch.countDown();
-              }
-
-              @Override
-              public void error(String errorCode, String errorMessage, Object errorDetails) {
-                Log.w(TAG, "failed to invoke session open signature. code=" + errorCode + ", message=" + errorMessage);
-                latch.countDown();
-              }
-
-              @Override
-              public void notImplemented() {
-                Log.w(TAG, "Session open signature not implemented.");
-                latch.countDown();
-              }
-            });
+          public void error(String errorCode, String errorMessage, Object errorDetails) {
+            Log.w(TAG, "failed to invoke session open signature. code=" + errorCode + ", message=" + errorMessage);
+            latch.countDown();
+          }
+
+          @Override
+          public void notImplemented() {
+            Log.w(TAG, "Session open signature not implemented.");
+            latch.countDown();
           }
         });
         try {
@@ -168,28 +278,23 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         params.put(Common.Param_Sign_Action, action);
         final Signature signature = new Signature();
         final CountDownLatch latch = new CountDownLatch(1);
-        handler.post(new Runnable() {
+        _DISPATCHER.dispatch(Common.Method_Sign_Conversation, params, new Result() {
+          @Override
+          public void success(Object result) {
+            fillResult2Signature(result, signature);
+            latch.countDown();
+          }
+
+          @Override
+          public void error(String errorCode, String errorMessage, Object errorDetails) {
+            Log.w(TAG, "failed to invoke conversation signature. code=" + errorCode + ", message=" + errorMessage);
+            latch.countDown();
+          }
+
           @Override
-          public void run() {
-            _CHANNEL.invokeMethod(Common.Method_Sign_Conversation, params, new Result() {
-              @Override
-              public void success(Object result) {
-                fillResult2Signature(result, signature);
-                latch.countDown();
-              }
-
-              @Override
-              public void error(String errorCode, String errorMessage, Object errorDetails) {
-                Log.w(TAG, "failed to invoke conversation signature. code=" + errorCode + ", message=" + errorMessage);
-                latch.countDown();
-              }
-
-              @Override
-              public void notImplemented() {
-                Log.w(TAG, "Conversation signature not implemented.");
-                latch.countDown();
-              }
-            });
+          public void notImplemented() {
+            Log.w(TAG, "Conversation signature not implemented.");
+            latch.countDown();
           }
         });
         try {
@@ -208,6 +313,102 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
     };
   }
 
+  /**
+   * @param result   method result, null for a background refresh.
+   * @param clientId client id.
+   * @param cacheKey key of query cache to store the result, nullable.
+   * @param token    result of ConversationQueryCache#beginQuery if cacheKey is not null.
+   */
+  private static LCIMConversationQueryCallback conversationQueryCallback(final Result result, final String clientId,
+                                                                         final String cacheKey, final long token) {
+    return new LCIMConversationQueryCallback() {
+      @Override
+      public void done(List<LCIMConversation> conversations, LCIMException e) {
+        if (null != e) {
+          Log.d(TAG, "failed to query conv. cause:" + e.getMessage());
+          if (null != cacheKey) {
+            _QUERY_CACHE.endQuery(clientId, cacheKey, null, token);
+          }
+          if (null != result) {
+            result.success(Common.wrapException(e));
+          }
+        } else {
+          List<Map<String, Object>> queryResult = new ArrayList<>();
+          for (LCIMConversation conv : conversations) {
+            Map<String, Object> data = Common.wrapConversation(conv);
+            long version = _SNAPSHOTS.seed(clientId, conv.getConversationId(), data);
+            // taken out of rawData by Dart, later deltas apply on top of it.
+            data.put(Common.Param_Version, version);
+            queryResult.add(data);
+          }
+          boolean stored = null != cacheKey && _QUERY_CACHE.endQuery(clientId, cacheKey, queryResult, token);
+          if (null != result) {
+            result.success(Common.wrapSuccessResponse(queryResult));
+          } else if (stored) {
+            // Dart got the stale result already, a refresh which lost a race with changes is dropped.
+            Map<String, Object> param = new HashMap<>();
+            param.put(Common.Param_Client_Id, clientId);
+            param.put(Common.Param_Conversations, queryResult);
+            _DISPATCHER.dispatch(Common.Method_Conv_Query_Refreshed, param, null);
+          }
+        }
+      }
+    };
+  }
+
+  private static Map<String, Object> wrapModerationState(String clientId, String conversationId, String kind,
+                                                         List<String> members) {
+    Map<String, Object> state = new HashMap<>();
+    state.put(Common.Param_Moderation_Ready, _MODERATION.isReady(clientId, conversationId, kind));
+    state.put(Common.Param_Count, _MODERATION.count(clientId, conversationId, kind));
+    state.put(Common.Param_Members, _MODERATION.contains(clientId, conversationId, kind, members));
+    return state;
+  }
+
+  private static Map<String, Object> wrapMemberOperationResult(LCIMException e, LCIMConversation conversation,
+                                                               List<String> allowedPids,
+                                                               List<Map<String, Object>> failedPids) {
+    if (null != e) {
+      return Common.wrapException(e);
+    }
+    Map<String, Object> resultMap = new HashMap<>();
+    resultMap.put("allowedPids", allowedPids);
+    resultMap.put("failedPids", failedPids);
+    resultMap.put(Common.Param_Conv_Members, conversation.getMembers());
+    resultMap.put(Common.Param_Update_Time, StringUtil.stringFromDate(new Date()));
+    return Common.wrapSuccessResponse(resultMap);
+  }
+
+  /**
+   * full conversation data for Dart, with the snapshot version later deltas are based on.
+   */
+  private static Map<String, Object> wrapVersionedConversation(String clientId, LCIMConversation conversation) {
+    Map<String, Object> data = Common.wrapConversation(conversation);
+    long version = _SNAPSHOTS.seed(clientId, conversation.getConversationId(), data);
+    data.put(Common.Param_Version, version);
+    return data;
+  }
+
+  private static Map<String, Object> wrapUpdateResult(LCIMException e, String clientId, LCIMConversation conversation,
+                                                      boolean patchOnly, Map<String, Object> setData,
+                                                      List<String> unsetKeys) {
+    if (null != e) {
+      return Common.wrapException(e);
+    }
+    if (!patchOnly || ConversationUpdateMerger.hasOperation(setData)) {
+      // values like Increment or AddUnique are resolved by server, only a full snapshot carries the result.
+      return Common.wrapSuccessResponse(wrapVersionedConversation(clientId, conversation));
+    }
+    // Dart applies the keys itself, members and untouched attributes are not sent back.
+    Date updatedAt = conversation.getUpdatedAt();
+    Map<String, Object> patch = new HashMap<>();
+    patch.put(Common.Param_Conv_Patch, true);
+    patch.put(Common.Param_Conv_Patch_Set, setData);
+    patch.put(Common.Param_Conv_Patch_Unset, unsetKeys);
+    patch.put(Common.Param_Update_Time, StringUtil.stringFromDate(null == updatedAt ? new Date() : updatedAt));
+    return Common.wrapSuccessResponse(patch);
+  }
+
   private boolean isDeleteOperation(Object value) {
     if (null != value && value instanceof Map) {
       Object operation = ((Map<String, Object>) value).get("__op");
@@ -218,15 +419,191 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
     return false;
   }
 
+  /**
+   * drop cached data of the conversation once a call changing it completes, so a query running
+   * meanwhile can't store the data from before the change.
+   */
+  private static Result invalidateOnComplete(MethodCall call, final Result result) {
+    if (!call.method.equals(Common.Method_Update_Conversation) && !call.method.equals(Common.Method_Update_Members)
+        && !call.method.equals(Common.Method_Mute_Conversation) && !call.method.equals(Common.Method_Send_Message)) {
+      return result;
+    }
+    final String clientId = Common.getParamString(call, Common.Param_Client_Id);
+    final String conversationId = Common.getParamString(call, Common.Param_Conv_Id);
+    final boolean members = call.method.equals(Common.Method_Update_Members);
+    return new Result() {
+      private void invalidate() {
+        _QUERY_CACHE.invalidate(clientId, conversationId);
+        if (members) {
+          // events of our own change may or may not reach us, count it again next time.
+          _MEMBER_COUNTS.invalidate(clientId, conversationId);
+        }
+      }
+
+      @Override
+      public void success(Object o) {
+        invalidate();
+        result.success(o);
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        invalidate();
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        result.notImplemented();
+      }
+    };
+  }
+
   @Override
-  public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
+  public void onMethodCall(@NonNull final MethodCall call, @NonNull Result rawResult) {
     Log.d(TAG, "onMethodCall " + call.method + "， args:" + call.arguments);
+    final Result result = invalidateOnComplete(call, _METRICS.track(call.method, rawResult));
+    _METRICS.getCallWindow().submit(call.method, new CallWindow.Call() {
+      @Override
+      public void run(Result windowResult) {
+        String lane = _LANES.laneOf(call.method, Common.getParamString(call, Common.Param_Client_Id),
+            Common.getParamString(call, Common.Param_Conv_Id), _UPDATE_MERGER.isEnabled());
+        if (null != lane) {
+          _LANES.submit(lane, new ConversationLanes.Task() {
+            @Override
+            public void run(Result laneResult) {
+              handleMethodCall(call, laneResult);
+            }
+          }, windowResult);
+          return;
+        }
+        handleMethodCall(call, windowResult);
+      }
+    }, result);
+  }
 
+  private void handleMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
     if (call.method.equals("getPlatformVersion")) {
       result.success("Android " + android.os.Build.VERSION.RELEASE);
       return;
     }
 
+    if (call.method.equals(Common.Method_Config_Inbound_Buffer)) {
+      boolean enabled = Common.getParamBoolean(call, Common.Param_Buffer_Enabled);
+      int capacity = Common.getParamInt(call, Common.Param_Buffer_Capacity);
+      String policy = Common.getParamString(call, Common.Param_Buffer_Policy);
+      int sampleRate = Common.getParamInt(call, Common.Param_Buffer_Sample_Rate);
+      int flushInterval = Common.getParamInt(call, Common.Param_Buffer_Flush_Interval);
+      int batchSize = Common.getParamInt(call, Common.Param_Buffer_Batch_Size);
+      _TRANSIENT_BUFFER.configure(enabled, capacity, policy, sampleRate, flushInterval, batchSize);
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Update_Merge)) {
+      _UPDATE_MERGER.setWindow(Common.getParamInt(call, Common.Param_Merge_Window));
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Call_Window)) {
+      if (_METRICS.getCallWindow().configure(Common.getParamString(call, Common.Param_Window_Class),
+          Common.getParamInt(call, Common.Param_Window_Limit), Common.getParamInt(call, Common.Param_Window_Max_Queued))) {
+        result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      } else {
+        result.success(Common.wrapException(Exception.ErrorCode_Invalid_Parameter, "unknown method class."));
+      }
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Send_Pacing)) {
+      Number rate = Common.getMethodParam(call, Common.Param_Pacing_Rate);
+      Number clientRate = Common.getMethodParam(call, Common.Param_Pacing_Client_Rate);
+      List<Integer> retryCodes = Common.getMethodParam(call, Common.Param_Pacing_Retry_Codes);
+      if (null != rate && rate.doubleValue() > 0 && Common.getParamInt(call, Common.Param_Pacing_Burst) > 1
+          && _LANES.isEnabled()) {
+        result.success(Common.wrapException(Exception.ErrorCode_Invalid_Parameter,
+            Exception.ErrorMsg_Lanes_With_Burst));
+        return;
+      }
+      _PACER.configure(null == rate ? 0 : rate.doubleValue(), Common.getParamInt(call, Common.Param_Pacing_Burst),
+          null == clientRate ? 0 : clientRate.doubleValue(), Common.getParamInt(call, Common.Param_Pacing_Client_Burst),
+          Common.getParamInt(call, Common.Param_Pacing_Max_Retries), retryCodes);
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Ordered_Lanes)) {
+      boolean enabled = Common.getParamBoolean(call, Common.Param_Lanes_Enabled);
+      if (enabled && _PACER.hasConversationBurst()) {
+        result.success(Common.wrapException(Exception.ErrorCode_Invalid_Parameter,
+            Exception.ErrorMsg_Lanes_With_Burst));
+        return;
+      }
+      _LANES.setEnabled(enabled);
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Read_Debounce)) {
+      _READS.setWindow(Common.getParamInt(call, Common.Param_Merge_Window));
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Query_Cache)) {
+      _QUERY_CACHE.configure(Common.getParamInt(call, Common.Param_Cache_TTL),
+          Common.getParamInt(call, Common.Param_Cache_Max_Stale));
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Receipt_Cache)) {
+      _RECEIPTS.setMaxAge(Common.getParamInt(call, Common.Param_Cache_Max_Age));
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Member_Count_Cache)) {
+      _MEMBER_COUNTS.setMaxAge(Common.getParamInt(call, Common.Param_Cache_Max_Age));
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Event_Route)) {
+      List<String> methods = Common.getMethodParam(call, Common.Param_Route_Methods);
+      List<String> conversationIds = Common.getMethodParam(call, Common.Param_Route_Conversations);
+      if (null != route) {
+        _DISPATCHER.setRule(route, methods, conversationIds);
+      }
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Get_Metrics)) {
+      result.success(Common.wrapSuccessResponse(_METRICS.snapshot()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Metrics_Snapshot)) {
+      int interval = Common.getParamInt(call, Common.Param_Metrics_Interval);
+      _METRICS.setSnapshotInterval(interval, _INSTANCE);
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Set_Delivery_Trace)) {
+      int sampleRate = Common.getParamInt(call, Common.Param_Trace_Sample_Rate);
+      _METRICS.getDeliveryTracer().setSampleRate(sampleRate);
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
+    if (call.method.equals(Common.Method_Get_Dispatch_Stats)) {
+      result.success(Common.wrapSuccessResponse(_DISPATCHER.getStats()));
+      return;
+    }
+
     final String clientId = Common.getMethodParam(call, Common.Param_Client_Id);
     if (StringUtil.isEmpty(clientId)) {
       result.success(Common.wrapException(Exception.ErrorCode_Invalid_Parameter,
@@ -259,25 +636,44 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       if (reconnectFlag) {
         openOption.setReconnect(true);
       }
-      LCIMClient client = StringUtil.isEmpty(tag) ?
-              LCIMClient.getInstance(clientId) : LCIMClient.getInstance(clientId, tag);
-      client.open(openOption, new LCIMClientCallback() {
+      // Dart has registered the client by now, events of the opening session go out live.
+      final boolean wasBound = _DISPATCHER.isBound(clientId);
+      final EventDispatcher.Route openRoute = route;
+      _DISPATCHER.bindClient(clientId, openRoute);
+      LCIMClientCallback openCallback = new LCIMClientCallback() {
         @Override
         public void done(LCIMClient client, LCIMException e) {
           Log.d(TAG, "client open result: " + Common.wrapClient(client));
           if (null != e) {
+            if (!wasBound) {
+              _DISPATCHER.unbindClient(clientId, openRoute);
+            }
             result.success(Common.wrapException(e));
           } else {
             result.success(Common.wrapSuccessResponse(Common.wrapClient(client)));
           }
         }
-      });
+      };
+      if (_WARMUP.takeOver(clientId, tag, openOption, openCallback)) {
+        return;
+      }
+      LCIMClient client = _CLIENT_PROVIDER.getClient(clientId, tag);
+      client.open(openOption, openCallback);
       return;
     }
 
-    LCIMClient avimClient = LCIMClient.getInstance(clientId);
+    LCIMClient avimClient = _CLIENT_PROVIDER.getClient(clientId, null);
 
     if (call.method.equals(Common.Method_Close_Client)) {
+      _WARMUP.remove(clientId);
+      _SNAPSHOTS.removeClient(clientId);
+      _QUERY_CACHE.removeClient(clientId);
+      _MEMBER_COUNTS.removeClient(clientId);
+      _MODERATION.removeClient(clientId);
+      _RECEIPTS.removeClient(clientId);
+      _READS.flushClient(clientId);
+      _PACER.removeClient(clientId);
+      _METRICS.getConnectionMonitor().removeClient(clientId);
       avimClient.close(new LCIMClientCallback() {
         @Override
         public void done(LCIMClient client, LCIMException e) {
@@ -310,7 +706,11 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
             if (ttl > 0 && convType == Common.Conv_Type_Temporary) {
               convData.put("ttl", ttl);
             }
+            long version = _SNAPSHOTS.seed(clientId, conversation.getConversationId(), convData);
+            convData.put(Common.Param_Version, version);
             Log.d(TAG, "succeed create conv: " + JSON.toJSONString(convData));
+            // cached queries may or may not match the new conversation.
+            _QUERY_CACHE.removeClient(clientId);
             result.success(Common.wrapSuccessResponse(convData));
           }
         }
@@ -333,6 +733,20 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       return;
     }
 
+    if (call.method.equals(Common.Method_Read_Conversations)) {
+      List<String> conversationIds = Common.getMethodParam(call, Common.Param_Conv_Ids);
+      if (null != conversationIds) {
+        for (String id : conversationIds) {
+          LCIMConversation conversation = avimClient.getConversation(id);
+          if (null != conversation) {
+            _READS.mark(clientId, conversation);
+          }
+        }
+      }
+      result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
+      return;
+    }
+
     if (call.method.equals(Common.Method_Query_Conversation)) {
       String where = Common.getMethodParam(call, Common.Param_Query_Where);
       String sort = Common.getMethodParam(call, Common.Param_Query_Sort);
@@ -340,34 +754,44 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       int skip = Common.getParamInt(call, Common.Param_Query_Skip);
       int flag = Common.getParamInt(call, Common.Param_Query_Flag);
       List<String> tempConvIds = Common.getMethodParam(call, Common.Param_Query_Temp_List);
-      LCIMConversationQueryCallback callback = new LCIMConversationQueryCallback() {
-        @Override
-        public void done(List<LCIMConversation> conversations, LCIMException e) {
-          if (null != e) {
-            Log.d(TAG, "failed to query conv. cause:" + e.getMessage());
-            result.success(Common.wrapException(e));
-          } else {
-            List<Map<String, Object>> queryResult = new ArrayList<>();
-            for (LCIMConversation conv : conversations) {
-              queryResult.add(Common.wrapConversation(conv));
+      LCIMConversationsQuery query = avimClient.getConversationsQuery();
+      if (null == tempConvIds || tempConvIds.isEmpty()) {
+        String cacheKey = null;
+        if (_QUERY_CACHE.isEnabled()) {
+          cacheKey = ConversationQueryCache.keyOf(clientId, where, sort, skip, limit, flag);
+          List<Map<String, Object>> cached = _QUERY_CACHE.get(cacheKey);
+          if (null != cached) {
+            result.success(Common.wrapSuccessResponse(cached));
+            if (_QUERY_CACHE.beginRefresh(cacheKey)) {
+              query.directFindInBackground(where, sort, skip, limit, flag,
+                  conversationQueryCallback(null, clientId, cacheKey, _QUERY_CACHE.beginQuery()));
             }
-            result.success(Common.wrapSuccessResponse(queryResult));
+            return;
           }
         }
-      };
-      LCIMConversationsQuery query = avimClient.getConversationsQuery();
-      if (null == tempConvIds || tempConvIds.isEmpty()) {
-        query.directFindInBackground(where, sort, skip, limit, flag, callback);
+        long token = null == cacheKey ? 0 : _QUERY_CACHE.beginQuery();
+        query.directFindInBackground(where, sort, skip, limit, flag,
+            conversationQueryCallback(result, clientId, cacheKey, token));
       } else {
-        query.findTempConversationsInBackground(tempConvIds, callback);
+        TempConversationLookup.find(avimClient, tempConvIds, new TempConversationLookup.Callback() {
+          @Override
+          public void done(List<Map<String, Object>> conversations, LCIMException e) {
+            if (null != e) {
+              Log.d(TAG, "failed to query temporary conv. cause:" + e.getMessage());
+              result.success(Common.wrapException(e));
+            } else {
+              result.success(Common.wrapSuccessResponse(conversations));
+            }
+          }
+        });
       }
       return;
     }
 
-    String conversationId = Common.getMethodParam(call, Common.Param_Conv_Id);
+    final String conversationId = Common.getMethodParam(call, Common.Param_Conv_Id);
     final LCIMConversation conversation = avimClient.getConversation(conversationId);
     if (call.method.equals(Common.Method_Fetch_Conversation)) {
-      result.success(Common.wrapSuccessResponse(Common.wrapConversation(conversation)));
+      result.success(Common.wrapSuccessResponse(wrapVersionedConversation(clientId, conversation)));
       return;
     }
 
@@ -377,6 +801,11 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       return;
     }
 
+    if (call.method.equals(Common.Method_Get_Conversation_Snapshot)) {
+      result.success(Common.wrapSuccessResponse(_SNAPSHOTS.full(clientId, conversation)));
+      return;
+    }
+
     if (call.method.equals(Common.Method_Mute_Conversation)) {
       final String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
       LCIMConversationCallback callback = new LCIMConversationCallback() {
@@ -406,149 +835,179 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       }
     } else if (call.method.equals(Common.Method_Update_Conversation)) {
       Map<String, Object> updateData = Common.getMethodParam(call, Common.Param_Conv_Data);
+      final boolean patchOnly = Common.getParamBoolean(call, Common.Param_Conv_Patch_Only);
       if (null == updateData || updateData.isEmpty()) {
         result.success(Common.wrapException(LCException.INVALID_PARAMETER, "update attributes is empty."));
       } else {
+        final Map<String, Object> setData = new HashMap<>();
+        final List<String> unsetKeys = new ArrayList<>();
         for (Map.Entry<String, Object> entry : updateData.entrySet()) {
-          String key = entry.getKey();
-          Object val = entry.getValue();
-          if (isDeleteOperation(val)) {
-            conversation.remove(key);
+          if (isDeleteOperation(entry.getValue())) {
+            unsetKeys.add(entry.getKey());
           } else {
-            conversation.setAttribute(key, val);
+            setData.put(entry.getKey(), entry.getValue());
           }
         }
+        if (_UPDATE_MERGER.isEnabled()) {
+          _UPDATE_MERGER.submit(clientId, conversation, setData, unsetKeys, new ConversationUpdateMerger.Completion() {
+            @Override
+            public void onComplete(LCIMException e, Map<String, Object> mergedSet, List<String> mergedUnset) {
+              result.success(wrapUpdateResult(e, clientId, conversation, patchOnly, mergedSet, mergedUnset));
+            }
+          });
+          return;
+        }
+        for (Map.Entry<String, Object> entry : setData.entrySet()) {
+          conversation.setAttribute(entry.getKey(), entry.getValue());
+        }
+        for (String key : unsetKeys) {
+          conversation.remove(key);
+        }
         conversation.updateInfoInBackground(new LCIMConversationCallback() {
           @Override
           public void done(LCIMException e) {
-            if (null != e) {
-              result.success(Common.wrapException(e));
-            } else {
-              result.success(Common.wrapSuccessResponse(Common.wrapConversation(conversation)));
-            }
+            result.success(wrapUpdateResult(e, clientId, conversation, patchOnly, setData, unsetKeys));
           }
         });
       }
     } else if (call.method.equals(Common.Method_Update_Members)) {
-      String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
+      final String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
       List<String> members = Common.getMethodParam(call, Common.Param_Conv_Members);
-      LCIMOperationPartiallySucceededCallback callback = new LCIMOperationPartiallySucceededCallback() {
-        @Override
-        public void done(LCIMException e, List<String> successfulClientIds, List<LCIMOperationFailure> failures) {
-          if (null != e) {
-            result.success(Common.wrapException(e));
-          } else {
-            Map<String, Object> resultMap = new HashMap<>();
-            resultMap.put("allowedPids", successfulClientIds);
-
-            if (null != failures) {
-              List<Map<String, Object>> failedList = new ArrayList<>();
-              for (LCIMOperationFailure f : failures) {
-                Map<String, Object> failedData = new HashMap<>();
-                failedData.put("pids", f.getMemberIds());
-                Map<String, String> errorMap = new HashMap<>();
-                errorMap.put("code", String.valueOf(f.getCode()));
-                errorMap.put("message", f.getReason());
-                failedData.put(Common.Param_Error, errorMap);
-                failedList.add(failedData);
-              }
-              resultMap.put("failedPids", failedList);
-            }
-            resultMap.put(Common.Param_Conv_Members, conversation.getMembers());
-            resultMap.put(Common.Param_Update_Time, StringUtil.stringFromDate(new Date()));
-            result.success(Common.wrapSuccessResponse(resultMap));
+      BulkMemberOperation.Operation bulkOperation = null;
+      if (Common.Conv_Operation_Add.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.addMembers(chunk, callback);
           }
-        }
-      };
+        };
+      } else if (Common.Conv_Operation_Remove.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.kickMembers(chunk, callback);
+          }
+        };
+      }
       if (null == members || members.isEmpty()) {
         result.success(Common.wrapException(LCException.INVALID_PARAMETER, "member list is empty."));
-      } else if (Common.Conv_Operation_Add.equalsIgnoreCase(operation)) {
-        conversation.addMembers(members, callback);
-      } else if (Common.Conv_Operation_Remove.equalsIgnoreCase(operation)) {
-        conversation.kickMembers(members, callback);
-      } else {
+      } else if (null == bulkOperation) {
         result.notImplemented();
+      } else {
+        BulkMemberOperation.run(members, bulkOperation, new BulkMemberOperation.Callback() {
+          @Override
+          public void done(LCIMException e, List<String> allowedPids, List<Map<String, Object>> failedPids) {
+            result.success(wrapMemberOperationResult(e, conversation, allowedPids, failedPids));
+          }
+        });
       }
     } else if (call.method.equals(Common.Method_Update_Block_Members)) {
-      String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
+      final String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
       List<String> members = Common.getMethodParam(call, Common.Param_Conv_Members);
-      LCIMOperationPartiallySucceededCallback callback = new LCIMOperationPartiallySucceededCallback() {
-        @Override
-        public void done(LCIMException e, List<String> successfulClientIds, List<LCIMOperationFailure> failures) {
-          if (null != e) {
-            result.success(Common.wrapException(e));
-          } else {
-            Map<String, Object> resultMap = new HashMap<>();
-            resultMap.put("allowedPids", successfulClientIds);
-
-            if (null != failures) {
-              List<Map<String, Object>> failedList = new ArrayList<>();
-              for (LCIMOperationFailure f : failures) {
-                Map<String, Object> failedData = new HashMap<>();
-                failedData.put("pids", f.getMemberIds());
-                Map<String, String> errorMap = new HashMap<>();
-                errorMap.put("code", String.valueOf(f.getCode()));
-                errorMap.put("message", f.getReason());
-                failedData.put(Common.Param_Error, errorMap);
-                failedList.add(failedData);
-              }
-              resultMap.put("failedPids", failedList);
-            }
-            resultMap.put(Common.Param_Conv_Members, conversation.getMembers());
-            resultMap.put(Common.Param_Update_Time, StringUtil.stringFromDate(new Date()));
-            result.success(Common.wrapSuccessResponse(resultMap));
+      BulkMemberOperation.Operation bulkOperation = null;
+      if (Common.Conv_Operation_Block.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.blockMembers(chunk, callback);
           }
-        }
-      };
+        };
+      } else if (Common.Conv_Operation_Unblock.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.unblockMembers(chunk, callback);
+          }
+        };
+      }
       if (null == members || members.isEmpty()) {
         result.success(Common.wrapException(LCException.INVALID_PARAMETER, "member list is empty."));
-      } else if (Common.Conv_Operation_Block.equalsIgnoreCase(operation)) {
-        conversation.blockMembers(members, callback);
-      } else if (Common.Conv_Operation_Unblock.equalsIgnoreCase(operation)) {
-        conversation.unblockMembers(members, callback);
-      } else {
+      } else if (null == bulkOperation) {
         result.notImplemented();
+      } else {
+        BulkMemberOperation.run(members, bulkOperation, new BulkMemberOperation.Callback() {
+          @Override
+          public void done(LCIMException e, List<String> allowedPids, List<Map<String, Object>> failedPids) {
+            if (null == e) {
+              _MODERATION.apply(clientId, conversationId, ModerationMirror.Kind_Blocked, allowedPids,
+                  Common.Conv_Operation_Block.equalsIgnoreCase(operation));
+            }
+            result.success(wrapMemberOperationResult(e, conversation, allowedPids, failedPids));
+          }
+        });
       }
     } else if (call.method.equals(Common.Method_Update_Mute_Members)) {
-      String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
+      final String operation = Common.getMethodParam(call, Common.Param_Conv_Operation);
       List<String> members = Common.getMethodParam(call, Common.Param_Conv_Members);
-      LCIMOperationPartiallySucceededCallback callback = new LCIMOperationPartiallySucceededCallback() {
+      BulkMemberOperation.Operation bulkOperation = null;
+      if (Common.Conv_Operation_Mute.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.muteMembers(chunk, callback);
+          }
+        };
+      } else if (Common.Conv_Operation_Unmute.equalsIgnoreCase(operation)) {
+        bulkOperation = new BulkMemberOperation.Operation() {
+          @Override
+          public void run(List<String> chunk, LCIMOperationPartiallySucceededCallback callback) {
+            conversation.unmuteMembers(chunk, callback);
+          }
+        };
+      }
+      if (null == members || members.isEmpty()) {
+        result.success(Common.wrapException(LCException.INVALID_PARAMETER, "member list is empty."));
+      } else if (null == bulkOperation) {
+        result.notImplemented();
+      } else {
+        BulkMemberOperation.run(members, bulkOperation, new BulkMemberOperation.Callback() {
+          @Override
+          public void done(LCIMException e, List<String> allowedPids, List<Map<String, Object>> failedPids) {
+            if (null == e) {
+              _MODERATION.apply(clientId, conversationId, ModerationMirror.Kind_Muted, allowedPids,
+                  Common.Conv_Operation_Mute.equalsIgnoreCase(operation));
+            }
+            result.success(wrapMemberOperationResult(e, conversation, allowedPids, failedPids));
+          }
+        });
+      }
+    } else if (call.method.equals(Common.Method_Check_Moderation)) {
+      final String kind = ModerationMirror.Kind_Blocked.equals(Common.getParamString(call, Common.Param_Moderation_Kind)) ?
+              ModerationMirror.Kind_Blocked : ModerationMirror.Kind_Muted;
+      final List<String> members = Common.getMethodParam(call, Common.Param_Conv_Members);
+      boolean wait = Common.getParamBoolean(call, Common.Param_Moderation_Wait);
+      if (_MODERATION.isReady(clientId, conversationId, kind) || !wait) {
+        result.success(Common.wrapSuccessResponse(wrapModerationState(clientId, conversationId, kind, members)));
+        _MODERATION.load(clientId, conversation, kind, new ModerationMirror.LoadCallback() {
+          @Override
+          public void done(LCIMException e) {
+            if (null != e) {
+              Log.w(TAG, "failed to load " + kind + " members. cause: " + e.getMessage());
+            }
+          }
+        });
+        return;
+      }
+      _MODERATION.load(clientId, conversation, kind, new ModerationMirror.LoadCallback() {
         @Override
-        public void done(LCIMException e, List<String> successfulClientIds, List<LCIMOperationFailure> failures) {
+        public void done(LCIMException e) {
           if (null != e) {
             result.success(Common.wrapException(e));
           } else {
-            Map<String, Object> resultMap = new HashMap<>();
-            resultMap.put("allowedPids", successfulClientIds);
-
-            if (null != failures) {
-              List<Map<String, Object>> failedList = new ArrayList<>();
-              for (LCIMOperationFailure f : failures) {
-                Map<String, Object> failedData = new HashMap<>();
-                failedData.put("pids", f.getMemberIds());
-                Map<String, String> errorMap = new HashMap<>();
-                errorMap.put("code", String.valueOf(f.getCode()));
-                errorMap.put("message", f.getReason());
-                failedData.put(Common.Param_Error, errorMap);
-                failedList.add(failedData);
-              }
-              resultMap.put("failedPids", failedList);
-            }
-            resultMap.put(Common.Param_Conv_Members, conversation.getMembers());
-            resultMap.put(Common.Param_Update_Time, StringUtil.stringFromDate(new Date()));
-            result.success(Common.wrapSuccessResponse(resultMap));
+            result.success(Common.wrapSuccessResponse(wrapModerationState(clientId, conversationId, kind, members)));
           }
         }
-      };
-      if (null == members || members.isEmpty()) {
-        result.success(Common.wrapException(LCException.INVALID_PARAMETER, "member list is empty."));
-      } else if (Common.Conv_Operation_Mute.equalsIgnoreCase(operation)) {
-        conversation.muteMembers(members, callback);
-      } else if (Common.Conv_Operation_Unmute.equalsIgnoreCase(operation)) {
-        conversation.unmuteMembers(members, callback);
-      } else {
-        result.notImplemented();
+      });
+    } else if (call.method.equals(Common.Method_Export_Members)) {
+      String kind = ModerationMirror.Kind_Blocked.equals(Common.getParamString(call, Common.Param_Moderation_Kind)) ?
+              ModerationMirror.Kind_Blocked : ModerationMirror.Kind_Muted;
+      int limit = Common.getParamInt(call, Common.Param_Query_Limit);
+      if (0 == limit) {
+        limit = MemberExport.MAX_PAGE_SIZE;
       }
+      Map<String, Object> resultMap = new HashMap<>();
+      resultMap.put(Common.Param_Export_Channel, MemberExport.open(messenger, conversation, kind, limit));
+      result.success(Common.wrapSuccessResponse(resultMap));
     } else if (call.method.equals(Common.Method_Query_Block_Members)) {
       int limit = Common.getParamInt(call, Common.Param_Query_Limit);
       String next = Common.getParamString(call, Common.Param_Query_Next);
@@ -590,12 +1049,19 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
       }
       conversation.queryMutedMembers(limit, next, callback);
     } else if (call.method.equals(Common.Method_Get_Message_Receipt)) {
+      Map<String, Object> cachedTimestamps = Common.getParamBoolean(call, Common.Param_Force_Refresh) ?
+              null : _RECEIPTS.get(clientId, conversationId);
+      if (null != cachedTimestamps) {
+        result.success(Common.wrapSuccessResponse(cachedTimestamps));
+        return;
+      }
       conversation.fetchReceiptTimestamps(new LCIMConversationCallback() {
         @Override
         public void done(LCIMException e) {
           if (null != e) {
             result.success(Common.wrapException(e));
           } else {
+            _RECEIPTS.put(clientId, conversationId, conversation.getLastReadAt(), conversation.getLastDeliveredAt());
             Map<String, Object> tsMap = new HashMap<>();
             tsMap.put("maxReadTimestamp", conversation.getLastReadAt());
             tsMap.put("maxDeliveredTimestamp", conversation.getLastDeliveredAt());
@@ -604,12 +1070,19 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         }
       });
     } else if (call.method.equals(Common.Method_Query_Member_Count)) {
+      Integer cachedCount = Common.getParamBoolean(call, Common.Param_Force_Refresh) ?
+              null : _MEMBER_COUNTS.get(clientId, conversationId);
+      if (null != cachedCount) {
+        result.success(Common.wrapSuccessResponse(cachedCount));
+        return;
+      }
       conversation.getMemberCount(new LCIMConversationMemberCountCallback() {
         @Override
         public void done(Integer memberCount, LCIMException e) {
           if (null != e) {
             result.success(Common.wrapException(e));
           } else {
+            _MEMBER_COUNTS.put(clientId, conversationId, memberCount);
             result.success(Common.wrapSuccessResponse(memberCount));
           }
         }
@@ -658,7 +1131,7 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         conversation.queryMessages(interval, direct, limit, callback);
       }
     } else if (call.method.equals(Common.Method_Read_Message)) {
-      conversation.read();
+      _READS.mark(clientId, conversation);
       result.success(Common.wrapSuccessResponse(new HashMap<String, Object>()));
     } else if (call.method.equals(Common.Method_Send_Message)) {
       Map<String, Object> msgData = Common.getMethodParam(call, Common.Param_Message_Raw);
@@ -668,6 +1141,7 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
               + ", message:" + JSON.toJSONString(msgData)
               + ", option:" + JSON.toJSONString(optionData));
       final LCIMMessage message = Common.parseMessage(msgData);
+      boolean uploads = false;
       if (message instanceof LCIMFileMessage && null != fileData) {
         byte[] byteArray = null;
         if (fileData.containsKey(Common.Param_File_Data)) {
@@ -698,8 +1172,10 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
         LCFile avFile = null;
         if (null != byteArray) {
           avFile = new LCFile(name, byteArray);
+          uploads = true;
         } else if (!StringUtil.isEmpty(localPath)) {
           avFile = new LCFile(name, new File(localPath));
+          uploads = true;
         } else if (!StringUtil.isEmpty(url)) {
           avFile = new LCFile(name, url);
         }
@@ -728,19 +1204,49 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
           Log.w(TAG, "invalid transient param. cause: " + ex.getMessage());
         }
       }
-      conversation.sendMessage(message, option,
-              new LCIMConversationCallback() {
-                @Override
-                public void done(LCIMException e) {
-                  if (null != e) {
-                    Log.d(TAG, "send failed. cause: " + e.getMessage());
-                    result.success(Common.wrapException(e));
-                  } else {
-                    Log.d(TAG, "send finished. message: " + Common.wrapMessage(message));
-                    result.success(Common.wrapSuccessResponse(Common.wrapMessage(message)));
-                  }
-                }
-              });
+      final long callTime = Common.getParamLong(call, Common.Param_Call_Time);
+      final long sendStart = _METRICS.getDeliveryTracer().onSendStarted(callTime);
+      final SendPacer.Attempt completion = new SendPacer.Attempt() {
+        @Override
+        public void done(LCIMException e) {
+          if (null != e) {
+            Log.d(TAG, "send failed. cause: " + e.getMessage());
+            result.success(Common.wrapException(e));
+          } else {
+            Map<String, Object> sentData = Common.wrapMessage(message);
+            Log.d(TAG, "send finished. message: " + sentData);
+            _METRICS.getDeliveryTracer().onSendAcked(sentData, callTime, sendStart);
+            result.success(Common.wrapSuccessResponse(sentData));
+          }
+        }
+      };
+      final LCIMMessageOption sendOption = option;
+      final boolean holdForUpload = uploads;
+      SendPacer.Send send = new SendPacer.Send() {
+        @Override
+        public void send(final SendPacer.Attempt attempt) {
+          if (holdForUpload) {
+            // the attachment is uploaded first, however long it takes later sends must wait for it.
+            ConversationLanes.setHeld(result, true);
+          }
+          conversation.sendMessage(message, sendOption, new LCIMConversationCallback() {
+            @Override
+            public void done(LCIMException e) {
+              attempt.done(e);
+            }
+          });
+        }
+
+        @Override
+        public void onHeld(boolean held) {
+          ConversationLanes.setHeld(result, held);
+        }
+      };
+      if (_PACER.isEnabled()) {
+        _PACER.submit(clientId, conversationId, send, completion);
+      } else {
+        send.send(completion);
+      }
     } else if (call.method.equals(Common.Method_Patch_Message)) {
       Map<String, Object> oldMsgData = Common.getMethodParam(call, Common.Param_Message_Old);
       Map<String, Object> newMsgData = Common.getMethodParam(call, Common.Param_Message_New);
@@ -831,15 +1337,40 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     Log.d(TAG, "LeancloudPlugin.onDetachedFromEngine called.");
+    if (null != channel) {
+      channel.setMethodCallHandler(null);
+      channel = null;
+      messenger = null;
+    }
+    if (null != route) {
+      // events of clients opened by this engine stay in replay buffer until they are opened again.
+      _DISPATCHER.detach(route);
+      route = null;
+    }
   }
 
   public void notify(String method, Object param) {
     Log.d(TAG, "notify mehtod=" + method + ", param=" + JSON.toJSONString(param));
-    _CHANNEL.invokeMethod(method, param);
+    if (param instanceof Map && (Common.Method_Conv_Updated.equals(method)
+        || Common.Method_Conv_Member_Updated.equals(method) || Common.Method_Message_Received.equals(method)
+        || Common.Method_Message_Batch_Received.equals(method))) {
+      Map<String, Object> eventParam = (Map<String, Object>) param;
+      String eventClientId = (String) eventParam.get(Common.Param_Client_Id);
+      if (Common.Method_Conv_Member_Updated.equals(method) && DefaultConversationEventHandler.isJoinEvent(eventParam)) {
+        // the conversation may now match list queries whose cached results don't contain it.
+        _QUERY_CACHE.removeClient(eventClientId);
+      } else {
+        _QUERY_CACHE.invalidate(eventClientId, (String) eventParam.get(Common.Param_Conv_Id));
+      }
+    }
+    if (param instanceof Map && Common.Method_Conv_UnreadCount_Updated.equals(method)) {
+      _READS.adjustUnread((Map<String, Object>) param);
+    }
+    _DISPATCHER.dispatch(method, param, null);
   }
 
   public void notifyWithResult(String method, Object param, Result callback) {
-    _CHANNEL.invokeMethod(method, param, callback);
+    _DISPATCHER.dispatch(method, param, callback);
   }
 
   /**
@@ -848,7 +1379,12 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
    * @param client client instance.
    */
   public void onDisconnected(LCIMClient client) {
-    _CHANNEL.invokeMethod(Common.Method_Client_Disconnected, Common.wrapClient(client));
+    // receipt and moderation events may be missed until resumed.
+    _RECEIPTS.removeClient(client.getClientId());
+    _MODERATION.removeClient(client.getClientId());
+    _DISPATCHER.dispatch(Common.Method_Client_Disconnected, Common.wrapClient(client), null);
+    _DISPATCHER.dispatch(Common.Method_Client_State_Changed,
+        _METRICS.getConnectionMonitor().onPaused(client.getClientId()), null);
   }
 
   /**
@@ -857,7 +1393,9 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
    * @param client client instance.
    */
   public void onResumed(LCIMClient client) {
-    _CHANNEL.invokeMethod(Common.Method_Client_Resumed, Common.wrapClient(client));
+    _DISPATCHER.dispatch(Common.Method_Client_Resumed, Common.wrapClient(client), null);
+    _DISPATCHER.dispatch(Common.Method_Client_State_Changed,
+        _METRICS.getConnectionMonitor().onResumed(client.getClientId()), null);
   }
 
   /**
@@ -866,10 +1404,14 @@ public class LeancloudPlugin implements FlutterPlugin, MethodCallHandler,
    * @param code detail code.
    */
   public void onOffline(LCIMClient client, int code) {
+    _RECEIPTS.removeClient(client.getClientId());
+    _MODERATION.removeClient(client.getClientId());
     Map<String, Object> param = Common.wrapClient(client);
     Map<String, Object> error = new HashMap<>();
     error.put(Common.Param_Code, code);
     param.put(Common.Param_Error, error);
-    _CHANNEL.invokeMethod(Common.Method_Client_Offline, param);
+    _DISPATCHER.dispatch(Common.Method_Client_Offline, param, null);
+    _DISPATCHER.dispatch(Common.Method_Client_State_Changed,
+        _METRICS.getConnectionMonitor().onOffline(client.getClientId(), code), null);
   }
 }
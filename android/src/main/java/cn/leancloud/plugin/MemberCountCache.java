@@ -0,0 +1,91 @@
+package cn.leancloud.plugin;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Member count per conversation, seeded by countMembers and adjusted by membership events.
+ *
+ * A count older than maxAge is dropped, so the next countMembers goes to server again and
+ * corrects any drift from missed events.
+ */
+public class MemberCountCache {
+  public static final int DEFAULT_MAX_AGE = 5 * 60 * 1000;
+
+  private static class Entry {
+    int count;
+    final long fetchedAt = SystemClock.elapsedRealtime();
+
+    Entry(int count) {
+      this.count = count;
+    }
+  }
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private int maxAge = DEFAULT_MAX_AGE;
+
+  private static String keyOf(String clientId, String conversationId) {
+    return clientId + "/" + conversationId;
+  }
+
+  /**
+   * @param maxAgeMillis max age of a count, non-positive value disables cache.
+   */
+  public synchronized void setMaxAge(int maxAgeMillis) {
+    this.maxAge = maxAgeMillis;
+    if (maxAgeMillis <= 0) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * @return cached count, null if absent or stale.
+   */
+  public synchronized Integer get(String clientId, String conversationId) {
+    String key = keyOf(clientId, conversationId);
+    Entry entry = entries.get(key);
+    if (null == entry) {
+      return null;
+    }
+    if (SystemClock.elapsedRealtime() - entry.fetchedAt > maxAge) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.count;
+  }
+
+  public synchronized void put(String clientId, String conversationId, int count) {
+    if (maxAge > 0) {
+      entries.put(keyOf(clientId, conversationId), new Entry(count));
+    }
+  }
+
+  /**
+   * apply a membership change to a cached count, no-op if not cached.
+   *
+   * @param delta joined members (positive) or left members (negative).
+   */
+  public synchronized void adjust(String clientId, String conversationId, int delta) {
+    Entry entry = entries.get(keyOf(clientId, conversationId));
+    if (null != entry) {
+      entry.count = Math.max(0, entry.count + delta);
+    }
+  }
+
+  public synchronized void invalidate(String clientId, String conversationId) {
+    entries.remove(keyOf(clientId, conversationId));
+  }
+
+  public synchronized void removeClient(String clientId) {
+    String prefix = clientId + "/";
+    Iterator<String> iterator = entries.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMConversationIterableResult;
+import cn.leancloud.im.v2.callback.LCIMConversationIterableResultCallback;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Full export of the muted or blocked member list of a conversation over its own EventChannel.
+ *
+ * Once Dart listens, pages are fetched with the next cursor until the list ends. The next page is
+ * requested as soon as a page arrives, so it's fetched while the current one is sent to Dart.
+ * Every event is a wrapped response like queryMutedMembers, a failure ends the stream.
+ * Cancelling the stream drops the page in flight and unregisters the channel.
+ */
+public class MemberExport implements EventChannel.StreamHandler {
+  public static final String CHANNEL_PREFIX = "leancloud_plugin/member_export/";
+  public static final int MAX_PAGE_SIZE = 100;
+
+  private static final AtomicInteger nextExportId = new AtomicInteger(0);
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final EventChannel channel;
+  private final LCIMConversation conversation;
+  private final String kind;
+  private final int pageSize;
+  private EventChannel.EventSink sink = null;
+  private boolean cancelled = false;
+
+  private MemberExport(EventChannel channel, LCIMConversation conversation, String kind, int pageSize) {
+    this.channel = channel;
+    this.conversation = conversation;
+    this.kind = kind;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * register an export channel, nothing is fetched until Dart listens to it.
+   *
+   * @param messenger    binary messenger of the plugin.
+   * @param conversation conversation instance.
+   * @param kind         ModerationMirror.Kind_Muted or ModerationMirror.Kind_Blocked.
+   * @param pageSize     members per page, clamped to [1, MAX_PAGE_SIZE].
+   * @return channel name.
+   */
+  public static String open(BinaryMessenger messenger, LCIMConversation conversation, String kind, int pageSize) {
+    String name = CHANNEL_PREFIX + nextExportId.incrementAndGet();
+    MemberExport export = new MemberExport(new EventChannel(messenger, name), conversation, kind,
+        Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize)));
+    export.channel.setStreamHandler(export);
+    return name;
+  }
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    sink = events;
+    cancelled = false;
+    fetch(null);
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    cancelled = true;
+    sink = null;
+    channel.setStreamHandler(null);
+  }
+
+  private void fetch(String next) {
+    LCIMConversationIterableResultCallback callback = new LCIMConversationIterableResultCallback() {
+      @Override
+      public void done(final LCIMConversationIterableResult iterableResult, final LCIMException e) {
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            onPage(iterableResult, e);
+          }
+        });
+      }
+    };
+    if (ModerationMirror.Kind_Blocked.equals(kind)) {
+      conversation.queryBlockedMembers(pageSize, next, callback);
+    } else {
+      conversation.queryMutedMembers(pageSize, next, callback);
+    }
+  }
+
+  private void onPage(LCIMConversationIterableResult iterableResult, LCIMException e) {
+    if (cancelled || null == sink) {
+      return;
+    }
+    if (null != e) {
+      sink.success(Common.wrapException(e));
+      sink.endOfStream();
+      return;
+    }
+    if (null == iterableResult) {
+      sink.endOfStream();
+      return;
+    }
+    String next = iterableResult.getNext();
+    boolean hasMore = null != next && next.length() > 0;
+    if (hasMore) {
+      // prefetch while this page is on its way to Dart.
+      fetch(next);
+    }
+    Map<String, Object> page = new HashMap<>();
+    page.put("client_ids", iterableResult.getMembers());
+    page.put("next", next);
+    sink.success(Common.wrapSuccessResponse(page));
+    if (!hasMore) {
+      sink.endOfStream();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package cn.leancloud.plugin;
+
+import java.nio.ByteBuffer;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * StandardMethodCodec on top of LeanCloudMessageCodec which reports encoded payload sizes.
+ *
+ * Responses are attributed to the method set by setCurrentMethod, because the codec
+ * only sees the result value. PluginMetrics sets it while a tracked Result is completed.
+ */
+public class MeteredMethodCodec extends StandardMethodCodec {
+  private static final ThreadLocal<String> currentMethod = new ThreadLocal<>();
+
+  private final PluginMetrics metrics;
+
+  public MeteredMethodCodec(PluginMetrics metrics) {
+    super(new LeanCloudMessageCodec());
+    this.metrics = metrics;
+  }
+
+  static void setCurrentMethod(String method) {
+    currentMethod.set(method);
+  }
+
+  @Override
+  public ByteBuffer encodeMethodCall(MethodCall methodCall) {
+    ByteBuffer buffer = super.encodeMethodCall(methodCall);
+    if (null != buffer) {
+      metrics.onEventEncoded(methodCall.method, sizeOf(buffer));
+    }
+    return buffer;
+  }
+
+  @Override
+  public MethodCall decodeMethodCall(ByteBuffer methodCall) {
+    int size = null == methodCall ? 0 : methodCall.remaining();
+    MethodCall call = super.decodeMethodCall(methodCall);
+    metrics.onRequestDecoded(call.method, size);
+    return call;
+  }
+
+  @Override
+  public ByteBuffer encodeSuccessEnvelope(Object result) {
+    ByteBuffer buffer = super.encodeSuccessEnvelope(result);
+    String method = currentMethod.get();
+    if (null != method && null != buffer) {
+      metrics.onResponseEncoded(method, sizeOf(buffer));
+    }
+    return buffer;
+  }
+
+  private static int sizeOf(ByteBuffer buffer) {
+    // StandardMethodCodec returns a buffer positioned at the end of written data.
+    return buffer.position() > 0 ? buffer.position() : buffer.remaining();
+  }
+}
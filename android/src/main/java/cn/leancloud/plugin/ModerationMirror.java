@@ -0,0 +1,220 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMConversationIterableResult;
+import cn.leancloud.im.v2.callback.LCIMConversationIterableResultCallback;
+
+/**
+ * Local copy of muted and blocked member sets of conversations.
+ *
+ * A set is loaded on demand by paging through queryMutedMembers/queryBlockedMembers in background,
+ * afterwards it's kept current by member muted/blocked events and our own update calls.
+ * Changes arriving while a set is loading are replayed on top of the loaded pages. Events are
+ * missed while a client is disconnected, so its sets are dropped then and loaded again on demand.
+ */
+public class ModerationMirror {
+  public static final String Kind_Muted = "muted";
+  public static final String Kind_Blocked = "blocked";
+
+  public static final int PAGE_SIZE = 100;
+
+  public interface LoadCallback {
+    void done(LCIMException e);
+  }
+
+  private static class MemberSet {
+    final Set<String> members = new HashSet<>();
+    boolean ready = false;
+    boolean loading = false;
+    // dropped while loading, the pages loaded so far may miss changes.
+    boolean stale = false;
+    final Set<String> addedWhileLoading = new HashSet<>();
+    final Set<String> removedWhileLoading = new HashSet<>();
+    final List<LoadCallback> waiting = new ArrayList<>();
+  }
+
+  private final Map<String, MemberSet> sets = new HashMap<>();
+
+  private static String keyOf(String clientId, String conversationId, String kind) {
+    return clientId + "/" + conversationId + "/" + kind;
+  }
+
+  private MemberSet memberSet(String key) {
+    MemberSet set = sets.get(key);
+    if (null == set) {
+      set = new MemberSet();
+      sets.put(key, set);
+    }
+    return set;
+  }
+
+  /**
+   * apply a change from an event or our own update, ignored until the set is loaded or loading.
+   */
+  public synchronized void apply(String clientId, String conversationId, String kind,
+                                 Collection<String> members, boolean added) {
+    MemberSet set = sets.get(keyOf(clientId, conversationId, kind));
+    if (null == set || null == members) {
+      return;
+    }
+    if (set.loading) {
+      (added ? set.addedWhileLoading : set.removedWhileLoading).addAll(members);
+      (added ? set.removedWhileLoading : set.addedWhileLoading).removeAll(members);
+    }
+    if (added) {
+      set.members.addAll(members);
+    } else {
+      set.members.removeAll(members);
+    }
+  }
+
+  public synchronized boolean isReady(String clientId, String conversationId, String kind) {
+    MemberSet set = sets.get(keyOf(clientId, conversationId, kind));
+    return null != set && set.ready;
+  }
+
+  /**
+   * @return membership of every member, empty if the set is not loaded.
+   */
+  public synchronized Map<String, Object> contains(String clientId, String conversationId, String kind,
+                                                   List<String> members) {
+    Map<String, Object> result = new HashMap<>();
+    MemberSet set = sets.get(keyOf(clientId, conversationId, kind));
+    if (null == set || !set.ready || null == members) {
+      return result;
+    }
+    for (String member : members) {
+      result.put(member, set.members.contains(member));
+    }
+    return result;
+  }
+
+  public synchronized int count(String clientId, String conversationId, String kind) {
+    MemberSet set = sets.get(keyOf(clientId, conversationId, kind));
+    return null == set || !set.ready ? -1 : set.members.size();
+  }
+
+  /**
+   * load a set by paging through all members, callback at once if it's loaded.
+   */
+  public void load(String clientId, LCIMConversation conversation, String kind, LoadCallback callback) {
+    String key = keyOf(clientId, conversation.getConversationId(), kind);
+    boolean ready = false;
+    synchronized (this) {
+      MemberSet set = memberSet(key);
+      if (set.ready) {
+        ready = true;
+      } else {
+        set.waiting.add(callback);
+        if (set.loading) {
+          return;
+        }
+        set.loading = true;
+        set.members.clear();
+      }
+    }
+    if (ready) {
+      // outside the lock, like finishLoad, the callback may call back into the mirror.
+      callback.done(null);
+      return;
+    }
+    loadPage(key, conversation, kind, null, new HashSet<String>());
+  }
+
+  private synchronized boolean restartIfStale(String key) {
+    MemberSet set = sets.get(key);
+    if (null == set || !set.stale) {
+      return false;
+    }
+    set.stale = false;
+    set.addedWhileLoading.clear();
+    set.removedWhileLoading.clear();
+    return true;
+  }
+
+  private void loadPage(final String key, final LCIMConversation conversation, final String kind, String next,
+                        final Set<String> loaded) {
+    LCIMConversationIterableResultCallback callback = new LCIMConversationIterableResultCallback() {
+      @Override
+      public void done(LCIMConversationIterableResult iterableResult, LCIMException e) {
+        if (null == e && restartIfStale(key)) {
+          loadPage(key, conversation, kind, null, new HashSet<String>());
+          return;
+        }
+        if (null == e && null != iterableResult) {
+          if (null != iterableResult.getMembers()) {
+            loaded.addAll(iterableResult.getMembers());
+          }
+          String nextCursor = iterableResult.getNext();
+          if (null != nextCursor && nextCursor.length() > 0) {
+            loadPage(key, conversation, kind, nextCursor, loaded);
+            return;
+          }
+        }
+        finishLoad(key, loaded, e);
+      }
+    };
+    if (Kind_Blocked.equals(kind)) {
+      conversation.queryBlockedMembers(PAGE_SIZE, next, callback);
+    } else {
+      conversation.queryMutedMembers(PAGE_SIZE, next, callback);
+    }
+  }
+
+  private void finishLoad(String key, Set<String> loaded, LCIMException e) {
+    List<LoadCallback> waiting;
+    synchronized (this) {
+      MemberSet set = sets.get(key);
+      if (null == set) {
+        return;
+      }
+      set.loading = false;
+      set.stale = false;
+      if (null == e) {
+        set.members.clear();
+        set.members.addAll(loaded);
+        set.members.addAll(set.addedWhileLoading);
+        set.members.removeAll(set.removedWhileLoading);
+        set.ready = true;
+      } else {
+        set.members.clear();
+      }
+      set.addedWhileLoading.clear();
+      set.removedWhileLoading.clear();
+      waiting = new ArrayList<>(set.waiting);
+      set.waiting.clear();
+    }
+    for (LoadCallback callback : waiting) {
+      callback.done(e);
+    }
+  }
+
+  /**
+   * drop sets of clientId, sets being loaded are loaded again from the first page.
+   */
+  public synchronized void removeClient(String clientId) {
+    String prefix = clientId + "/";
+    Iterator<Map.Entry<String, MemberSet>> iterator = sets.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, MemberSet> entry = iterator.next();
+      if (!entry.getKey().startsWith(prefix)) {
+        continue;
+      }
+      if (entry.getValue().loading) {
+        entry.getValue().stale = true;
+      } else {
+        iterator.remove();
+      }
+    }
+  }
+}
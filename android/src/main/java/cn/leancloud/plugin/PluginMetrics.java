@@ -0,0 +1,220 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Runtime metrics of the plugin channel.
+ *
+ * - per method: call count, in-flight calls, latency from onMethodCall to result, request and response bytes.
+ * - per event: count and encoded bytes.
+ * - main thread time spent sending events to Dart.
+ * - message delivery legs, see DeliveryTracer.
+ * - connection health of every client, see ConnectionMonitor.
+ * - in-flight window of method classes, see CallWindow.
+ */
+public class PluginMetrics {
+  private static class MethodStats {
+    long count = 0;
+    int inFlight = 0;
+    long requestBytes = 0;
+    long responseBytes = 0;
+    final LatencyHistogram latency = new LatencyHistogram();
+
+    Map<String, Object> snapshot() {
+      Map<String, Object> result = new HashMap<>();
+      result.put("count", count);
+      result.put("inFlight", inFlight);
+      result.put("requestBytes", requestBytes);
+      result.put("responseBytes", responseBytes);
+      result.put("latency", latency.snapshot());
+      return result;
+    }
+  }
+
+  private static class EventStats {
+    long count = 0;
+    long bytes = 0;
+
+    Map<String, Object> snapshot() {
+      Map<String, Object> result = new HashMap<>();
+      result.put("count", count);
+      result.put("bytes", bytes);
+      return result;
+    }
+  }
+
+  private final Map<String, MethodStats> methods = new HashMap<>();
+  private final Map<String, EventStats> events = new HashMap<>();
+  private final LatencyHistogram notifyTime = new LatencyHistogram();
+  private final DeliveryTracer deliveryTracer = new DeliveryTracer();
+  private final ConnectionMonitor connectionMonitor = new ConnectionMonitor();
+  private final CallWindow callWindow = new CallWindow();
+  private final long startTime = SystemClock.elapsedRealtime();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private IMEventNotification snapshotListener = null;
+  private int snapshotInterval = 0;
+
+  private final Runnable snapshotTask = new Runnable() {
+    @Override
+    public void run() {
+      IMEventNotification listener;
+      synchronized (PluginMetrics.this) {
+        listener = snapshotListener;
+        if (null == listener || snapshotInterval <= 0) {
+          return;
+        }
+        handler.postDelayed(this, snapshotInterval);
+      }
+      listener.notify(Common.Method_Metrics_Snapshot, snapshot());
+    }
+  };
+
+  private MethodStats methodStats(String method) {
+    MethodStats stats = methods.get(method);
+    if (null == stats) {
+      stats = new MethodStats();
+      methods.put(method, stats);
+    }
+    return stats;
+  }
+
+  private EventStats eventStats(String method) {
+    EventStats stats = events.get(method);
+    if (null == stats) {
+      stats = new EventStats();
+      events.put(method, stats);
+    }
+    return stats;
+  }
+
+  public synchronized void onRequestDecoded(String method, int bytes) {
+    methodStats(method).requestBytes += bytes;
+  }
+
+  public synchronized void onResponseEncoded(String method, int bytes) {
+    methodStats(method).responseBytes += bytes;
+  }
+
+  public synchronized void onEventEncoded(String method, int bytes) {
+    EventStats stats = eventStats(method);
+    stats.count++;
+    stats.bytes += bytes;
+  }
+
+  public void onEventSent(long nanos) {
+    notifyTime.recordNanos(nanos);
+  }
+
+  /**
+   * wrap the result of a method call, so that latency and in-flight count are recorded once it completes.
+   *
+   * @param method method name.
+   * @param result original result.
+   * @return tracked result.
+   */
+  public MethodChannel.Result track(final String method, final MethodChannel.Result result) {
+    final long start = System.nanoTime();
+    synchronized (this) {
+      MethodStats stats = methodStats(method);
+      stats.count++;
+      stats.inFlight++;
+    }
+    return new MethodChannel.Result() {
+      private boolean completed = false;
+
+      private void complete() {
+        synchronized (PluginMetrics.this) {
+          if (completed) {
+            return;
+          }
+          completed = true;
+          MethodStats stats = methodStats(method);
+          stats.inFlight--;
+          stats.latency.recordNanos(System.nanoTime() - start);
+        }
+      }
+
+      @Override
+      public void success(Object value) {
+        complete();
+        MeteredMethodCodec.setCurrentMethod(method);
+        try {
+          result.success(value);
+        } finally {
+          MeteredMethodCodec.setCurrentMethod(null);
+        }
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        complete();
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        complete();
+        result.notImplemented();
+      }
+    };
+  }
+
+  /**
+   * send snapshot() to Dart periodically.
+   *
+   * @param intervalMillis interval in milliseconds, non-positive value stops it.
+   * @param listener       event sink.
+   */
+  public synchronized void setSnapshotInterval(int intervalMillis, IMEventNotification listener) {
+    handler.removeCallbacks(snapshotTask);
+    this.snapshotInterval = intervalMillis;
+    this.snapshotListener = listener;
+    if (intervalMillis > 0 && null != listener) {
+      handler.postDelayed(snapshotTask, intervalMillis);
+    }
+  }
+
+  public DeliveryTracer getDeliveryTracer() {
+    return deliveryTracer;
+  }
+
+  public ConnectionMonitor getConnectionMonitor() {
+    return connectionMonitor;
+  }
+
+  public CallWindow getCallWindow() {
+    return callWindow;
+  }
+
+  public synchronized int getInFlight(String method) {
+    MethodStats stats = methods.get(method);
+    return null == stats ? 0 : stats.inFlight;
+  }
+
+  public synchronized Map<String, Object> snapshot() {
+    Map<String, Object> methodResult = new HashMap<>();
+    for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+      methodResult.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    Map<String, Object> eventResult = new HashMap<>();
+    for (Map.Entry<String, EventStats> entry : events.entrySet()) {
+      eventResult.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    Map<String, Object> result = new HashMap<>();
+    result.put("methods", methodResult);
+    result.put("events", eventResult);
+    result.put("notify", notifyTime.snapshot());
+    result.put("delivery", deliveryTracer.snapshot());
+    result.put("connections", connectionMonitor.snapshot());
+    result.put("callWindow", callWindow.snapshot());
+    result.put("uptime", SystemClock.elapsedRealtime() - startTime);
+    return result;
+  }
+}
@@ -0,0 +1,147 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMConversation;
+
+/**
+ * Debounced read marking of conversations.
+ *
+ * A conversation marked read is reported to Dart as having no unread message at once, while its
+ * read ack waits for the window. Marks of the same conversation within the window collapse into
+ * one ack, and all pending acks are flushed together when the window ends. The SDK has no batch
+ * read command, so the flushed acks still go out as one read per conversation, pipelined on the
+ * connection. Disabled by default, acks are sent at once.
+ *
+ * Until its ack is sent the SDK still counts the read messages, so unread count events of a
+ * pending conversation only report messages which arrived after the mark, see adjustUnread.
+ */
+public class ReadScheduler {
+  public static final int DEFAULT_WINDOW = 0;
+
+  private static class Pending {
+    final LCIMConversation conversation;
+    // unread count of SDK when it was marked.
+    final int readCount;
+
+    Pending(LCIMConversation conversation, int readCount) {
+      this.conversation = conversation;
+      this.readCount = readCount;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final IMEventNotification listener;
+  private final LinkedHashMap<String, Pending> pendings = new LinkedHashMap<>();
+  private boolean scheduled = false;
+  private int window = DEFAULT_WINDOW;
+
+  public ReadScheduler(IMEventNotification listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param windowMillis debounce window in milliseconds, non-positive value sends acks at once.
+   */
+  public synchronized void setWindow(int windowMillis) {
+    this.window = windowMillis;
+  }
+
+  /**
+   * mark conversation as read.
+   *
+   * @param clientId     client id.
+   * @param conversation conversation instance.
+   */
+  public void mark(String clientId, LCIMConversation conversation) {
+    if (conversation.getUnreadMessagesCount() > 0 || conversation.unreadMessagesMentioned()) {
+      HashMap<String, Object> param = new HashMap<>();
+      param.put(Common.Param_Client_Id, clientId);
+      param.put(Common.Param_Conv_Id, conversation.getConversationId());
+      param.put(Common.Param_Count, 0);
+      param.put(Common.Param_Mention, false);
+      listener.notify(Common.Method_Conv_UnreadCount_Updated, param);
+    }
+    synchronized (this) {
+      if (window <= 0) {
+        pendings.remove(clientId + "/" + conversation.getConversationId());
+      } else {
+        pendings.put(clientId + "/" + conversation.getConversationId(),
+            new Pending(conversation, conversation.getUnreadMessagesCount()));
+        if (!scheduled) {
+          scheduled = true;
+          handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+              flush();
+            }
+          }, window);
+        }
+        return;
+      }
+    }
+    conversation.read();
+  }
+
+  /**
+   * take the messages already marked read out of an unread count event, no-op if the conversation
+   * has no pending ack.
+   *
+   * @param param event param of Common.Method_Conv_UnreadCount_Updated.
+   */
+  public synchronized void adjustUnread(Map<String, Object> param) {
+    Pending pending = pendings.get(param.get(Common.Param_Client_Id) + "/" + param.get(Common.Param_Conv_Id));
+    Object count = param.get(Common.Param_Count);
+    if (null == pending || !(count instanceof Integer)) {
+      return;
+    }
+    int unread = Math.max(0, (Integer) count - pending.readCount);
+    param.put(Common.Param_Count, unread);
+    if (0 == unread) {
+      param.put(Common.Param_Mention, false);
+      param.remove(Common.Param_Message_Raw);
+    }
+  }
+
+  private void flush() {
+    List<Pending> conversations;
+    synchronized (this) {
+      scheduled = false;
+      conversations = new ArrayList<>(pendings.values());
+      pendings.clear();
+    }
+    for (Pending pending : conversations) {
+      pending.conversation.read();
+    }
+  }
+
+  /**
+   * send pending acks of clientId at once, Dart already shows them as read. call it before the
+   * client is closed.
+   */
+  public void flushClient(String clientId) {
+    List<Pending> conversations = new ArrayList<>();
+    synchronized (this) {
+      String prefix = clientId + "/";
+      Iterator<Map.Entry<String, Pending>> iterator = pendings.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Pending> entry = iterator.next();
+        if (entry.getKey().startsWith(prefix)) {
+          conversations.add(entry.getValue());
+          iterator.remove();
+        }
+      }
+    }
+    for (Pending pending : conversations) {
+      pending.conversation.read();
+    }
+  }
+}
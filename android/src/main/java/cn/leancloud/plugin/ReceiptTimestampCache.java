@@ -0,0 +1,101 @@
+package cn.leancloud.plugin;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Receipt timestamps (lastReadAt/lastDeliveredAt) per conversation, seeded by fetchReceiptTimestamps
+ * and kept current by onLastReadAtUpdated/onLastDeliveredAtUpdated.
+ *
+ * An entry is fresh for maxAge after its fetch. Events may be missed while the connection is
+ * down, so all entries of a client are dropped once it's disconnected.
+ */
+public class ReceiptTimestampCache {
+  public static final int DEFAULT_MAX_AGE = 5 * 60 * 1000;
+
+  private static class Entry {
+    long readAt;
+    long deliveredAt;
+    final long fetchedAt = SystemClock.elapsedRealtime();
+
+    Entry(long readAt, long deliveredAt) {
+      this.readAt = readAt;
+      this.deliveredAt = deliveredAt;
+    }
+  }
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private int maxAge = DEFAULT_MAX_AGE;
+
+  private static String keyOf(String clientId, String conversationId) {
+    return clientId + "/" + conversationId;
+  }
+
+  /**
+   * @param maxAgeMillis max age of fetched timestamps, non-positive value disables cache.
+   */
+  public synchronized void setMaxAge(int maxAgeMillis) {
+    this.maxAge = maxAgeMillis;
+    if (maxAgeMillis <= 0) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * @return {maxReadTimestamp, maxDeliveredTimestamp}, null if absent or stale.
+   */
+  public synchronized Map<String, Object> get(String clientId, String conversationId) {
+    String key = keyOf(clientId, conversationId);
+    Entry entry = entries.get(key);
+    if (null == entry) {
+      return null;
+    }
+    if (SystemClock.elapsedRealtime() - entry.fetchedAt > maxAge) {
+      entries.remove(key);
+      return null;
+    }
+    Map<String, Object> tsMap = new HashMap<>();
+    tsMap.put("maxReadTimestamp", entry.readAt);
+    tsMap.put("maxDeliveredTimestamp", entry.deliveredAt);
+    return tsMap;
+  }
+
+  public synchronized void put(String clientId, String conversationId, long readAt, long deliveredAt) {
+    if (maxAge > 0) {
+      entries.put(keyOf(clientId, conversationId), new Entry(readAt, deliveredAt));
+    }
+  }
+
+  /**
+   * apply a lastReadAt event to a cached entry, no-op if not cached.
+   */
+  public synchronized void updateReadAt(String clientId, String conversationId, long readAt) {
+    Entry entry = entries.get(keyOf(clientId, conversationId));
+    if (null != entry) {
+      entry.readAt = Math.max(entry.readAt, readAt);
+    }
+  }
+
+  /**
+   * apply a lastDeliveredAt event to a cached entry, no-op if not cached.
+   */
+  public synchronized void updateDeliveredAt(String clientId, String conversationId, long deliveredAt) {
+    Entry entry = entries.get(keyOf(clientId, conversationId));
+    if (null != entry) {
+      entry.deliveredAt = Math.max(entry.deliveredAt, deliveredAt);
+    }
+  }
+
+  public synchronized void removeClient(String clientId) {
+    String prefix = clientId + "/";
+    Iterator<String> iterator = entries.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+  }
+}
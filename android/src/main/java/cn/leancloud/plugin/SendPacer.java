@@ -0,0 +1,294 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.leancloud.im.v2.LCIMException;
+
+/**
+ * Paces outbound messages with token buckets per conversation and per client.
+ *
+ * A send runs at once if both buckets have a token, otherwise it's queued and Dart is told its
+ * queue position. Queued sends of a conversation keep their order. A send failed with one of
+ * retryCodes (the rate limit errors of server) is retried with exponential backoff, ahead of later
+ * sends of its conversation. Disabled by default.
+ *
+ * With ConversationLanes on, a conversation has at most one send here at a time, later sends wait
+ * in their lane, and queue positions count sends of other conversations only. A conversation burst
+ * above 1 can't work then, so the plugin rejects that combination, see hasConversationBurst. While
+ * a send waits for a token or a backoff it's reported by Send#onHeld, so the lane doesn't time it out.
+ */
+public class SendPacer {
+  public interface Send {
+    void send(Attempt attempt);
+
+    /**
+     * @param held true once the send starts waiting for a token or a backoff, false right before it runs.
+     */
+    void onHeld(boolean held);
+  }
+
+  public interface Attempt {
+    void done(LCIMException e);
+  }
+
+  public static final int BACKOFF_BASE = 500;
+  public static final int BACKOFF_MAX = 10 * 1000;
+
+  private static class Bucket {
+    double tokens;
+    long updatedAt = SystemClock.elapsedRealtime();
+
+    Bucket(int burst) {
+      this.tokens = burst;
+    }
+
+    /**
+     * @return milliseconds until a token is available, 0 if available now.
+     */
+    long refill(double rate, int burst, long now) {
+      tokens = Math.min(burst, tokens + (now - updatedAt) * rate / 1000);
+      updatedAt = now;
+      return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / rate);
+    }
+  }
+
+  private static class Pending {
+    final String clientId;
+    final String conversationId;
+    final Send send;
+    final Attempt completion;
+    int retries = 0;
+    long notBefore = 0;
+
+    Pending(String clientId, String conversationId, Send send, Attempt completion) {
+      this.clientId = clientId;
+      this.conversationId = conversationId;
+      this.send = send;
+      this.completion = completion;
+    }
+  }
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final IMEventNotification listener;
+  private final LinkedList<Pending> pendings = new LinkedList<>();
+  private final Map<String, Bucket> conversationBuckets = new HashMap<>();
+  private final Map<String, Bucket> clientBuckets = new HashMap<>();
+  private final Set<Integer> retryCodes = new HashSet<>();
+  private double rate = 0;
+  private int burst = 1;
+  private double clientRate = 0;
+  private int clientBurst = 1;
+  private int maxRetries = 0;
+  private long drainAt = 0;
+
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (SendPacer.this) {
+        drainAt = 0;
+      }
+      drain();
+    }
+  };
+
+  public SendPacer(IMEventNotification listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param rate        sends per second of a conversation, non-positive value means no limit.
+   * @param burst       sends a conversation may do at once.
+   * @param clientRate  sends per second of a client, non-positive value means no limit.
+   * @param clientBurst sends a client may do at once.
+   * @param maxRetries  max retries of a send failed with one of retryCodes.
+   * @param retryCodes  error codes to retry.
+   */
+  public synchronized void configure(double rate, int burst, double clientRate, int clientBurst, int maxRetries,
+                                     List<Integer> retryCodes) {
+    this.rate = rate;
+    this.burst = Math.max(1, burst);
+    this.clientRate = clientRate;
+    this.clientBurst = Math.max(1, clientBurst);
+    this.maxRetries = Math.max(0, maxRetries);
+    this.retryCodes.clear();
+    if (null != retryCodes) {
+      this.retryCodes.addAll(retryCodes);
+    }
+    conversationBuckets.clear();
+    clientBuckets.clear();
+    if (!isEnabled()) {
+      handler.post(drainTask);
+    }
+  }
+
+  public synchronized boolean isEnabled() {
+    return rate > 0 || clientRate > 0;
+  }
+
+  /**
+   * @return true if a conversation may do more than one send at once.
+   */
+  public synchronized boolean hasConversationBurst() {
+    return rate > 0 && burst > 1;
+  }
+
+  /**
+   * send now or once the buckets allow.
+   *
+   * @param clientId       client id.
+   * @param conversationId conversation id.
+   * @param send           the send, it may run more than once if retried.
+   * @param completion     outcome of the last attempt.
+   */
+  public void submit(String clientId, String conversationId, Send send, Attempt completion) {
+    Pending pending = new Pending(clientId, conversationId, send, completion);
+    synchronized (this) {
+      pendings.add(pending);
+    }
+    List<Pending> ready = take();
+    int position = ready.contains(pending) ? -1 : positionOf(pending);
+    if (position >= 0) {
+      send.onHeld(true);
+    }
+    run(ready);
+    if (position >= 0) {
+      HashMap<String, Object> param = new HashMap<>();
+      param.put(Common.Param_Client_Id, clientId);
+      param.put(Common.Param_Conv_Id, conversationId);
+      param.put(Common.Param_Queue_Position, position);
+      listener.notify(Common.Method_Message_Send_Queued, param);
+    }
+  }
+
+  private synchronized int positionOf(Pending target) {
+    int position = 0;
+    for (Pending pending : pendings) {
+      if (pending == target) {
+        return position;
+      }
+      if (pending.clientId.equals(target.clientId)) {
+        position++;
+      }
+    }
+    return -1;
+  }
+
+  private void drain() {
+    run(take());
+  }
+
+  private void run(List<Pending> ready) {
+    for (Pending pending : ready) {
+      attempt(pending);
+    }
+  }
+
+  /**
+   * take pendings which may run now, in order, and schedule next drain for the rest.
+   */
+  private synchronized List<Pending> take() {
+    List<Pending> ready = new ArrayList<>();
+    long now = SystemClock.elapsedRealtime();
+    long nextWait = Long.MAX_VALUE;
+    Set<String> blocked = new HashSet<>();
+    Iterator<Pending> iterator = pendings.iterator();
+    while (iterator.hasNext()) {
+      Pending pending = iterator.next();
+      String conversationKey = pending.clientId + "/" + pending.conversationId;
+      if (blocked.contains(conversationKey) || blocked.contains(pending.clientId)) {
+        continue;
+      }
+      long wait = Math.max(0, pending.notBefore - now);
+      Bucket conversationBucket = null;
+      Bucket clientBucket = null;
+      if (rate > 0) {
+        conversationBucket = bucket(conversationBuckets, conversationKey, burst);
+        wait = Math.max(wait, conversationBucket.refill(rate, burst, now));
+      }
+      if (clientRate > 0) {
+        clientBucket = bucket(clientBuckets, pending.clientId, clientBurst);
+        long clientWait = clientBucket.refill(clientRate, clientBurst, now);
+        if (clientWait > 0) {
+          blocked.add(pending.clientId);
+        }
+        wait = Math.max(wait, clientWait);
+      }
+      if (wait > 0) {
+        blocked.add(conversationKey);
+        nextWait = Math.min(nextWait, wait);
+        continue;
+      }
+      if (null != conversationBucket) {
+        conversationBucket.tokens -= 1;
+      }
+      if (null != clientBucket) {
+        clientBucket.tokens -= 1;
+      }
+      iterator.remove();
+      ready.add(pending);
+    }
+    if (nextWait != Long.MAX_VALUE && (0 == drainAt || now + nextWait < drainAt)) {
+      drainAt = now + nextWait;
+      handler.removeCallbacks(drainTask);
+      handler.postDelayed(drainTask, nextWait);
+    }
+    return ready;
+  }
+
+  private static Bucket bucket(Map<String, Bucket> buckets, String key, int burst) {
+    Bucket bucket = buckets.get(key);
+    if (null == bucket) {
+      bucket = new Bucket(burst);
+      buckets.put(key, bucket);
+    }
+    return bucket;
+  }
+
+  private void attempt(final Pending pending) {
+    pending.send.onHeld(false);
+    pending.send.send(new Attempt() {
+      @Override
+      public void done(LCIMException e) {
+        boolean retry;
+        synchronized (SendPacer.this) {
+          retry = null != e && isEnabled() && pending.retries < maxRetries && retryCodes.contains(e.getAppCode());
+          if (retry) {
+            pending.notBefore = SystemClock.elapsedRealtime()
+                + Math.min(BACKOFF_MAX, (long) BACKOFF_BASE << pending.retries);
+            pending.retries++;
+            // back to the head, so it stays ahead of later sends of its conversation.
+            pendings.addFirst(pending);
+          }
+        }
+        if (retry) {
+          pending.send.onHeld(true);
+          drain();
+        } else {
+          pending.completion.done(e);
+        }
+      }
+    });
+  }
+
+  public synchronized void removeClient(String clientId) {
+    String prefix = clientId + "/";
+    Iterator<String> iterator = conversationBuckets.keySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+    clientBuckets.remove(clientId);
+  }
+}
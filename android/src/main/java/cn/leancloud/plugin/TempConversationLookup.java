@@ -0,0 +1,126 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMConversationsQuery;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMConversationQueryCallback;
+
+/**
+ * Lookup of temporary conversations by id, for any number of ids.
+ *
+ * Ids already loaded in the client are answered locally. The rest are split into chunks of
+ * CHUNK_SIZE, queried with at most PARALLELISM requests in flight, and the results are merged in
+ * input order. The first failed chunk fails the whole lookup.
+ */
+public class TempConversationLookup {
+  public interface Callback {
+    void done(List<Map<String, Object>> conversations, LCIMException e);
+  }
+
+  public static final int CHUNK_SIZE = 100;
+  public static final int PARALLELISM = 4;
+
+  private final LCIMClient client;
+  private final List<String> conversationIds;
+  private final Callback callback;
+  private final Map<String, Map<String, Object>> found = new HashMap<>();
+  private final List<List<String>> chunks = new ArrayList<>();
+  private int nextChunk = 0;
+  private int runningChunks = 0;
+  private boolean finished = false;
+
+  private TempConversationLookup(LCIMClient client, List<String> conversationIds, Callback callback) {
+    this.client = client;
+    this.conversationIds = conversationIds;
+    this.callback = callback;
+  }
+
+  public static void find(LCIMClient client, List<String> conversationIds, Callback callback) {
+    new TempConversationLookup(client, conversationIds, callback).start();
+  }
+
+  private void start() {
+    List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+    for (String conversationId : new LinkedHashSet<>(conversationIds)) {
+      LCIMConversation cached = client.getConversation(conversationId);
+      if (null != cached && null != cached.getCreatedAt()) {
+        found.put(conversationId, Common.wrapConversation(cached));
+        continue;
+      }
+      chunk.add(conversationId);
+      if (chunk.size() == CHUNK_SIZE) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>(CHUNK_SIZE);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    synchronized (this) {
+      if (chunks.isEmpty()) {
+        finish(null);
+        return;
+      }
+      while (runningChunks < PARALLELISM && nextChunk < chunks.size()) {
+        runNext();
+      }
+    }
+  }
+
+  // called with lock held.
+  private void runNext() {
+    List<String> chunk = chunks.get(nextChunk++);
+    runningChunks++;
+    LCIMConversationsQuery query = client.getConversationsQuery();
+    query.findTempConversationsInBackground(chunk, new LCIMConversationQueryCallback() {
+      @Override
+      public void done(List<LCIMConversation> conversations, LCIMException e) {
+        onChunkDone(conversations, e);
+      }
+    });
+  }
+
+  private synchronized void onChunkDone(List<LCIMConversation> conversations, LCIMException e) {
+    runningChunks--;
+    if (finished) {
+      return;
+    }
+    if (null != e) {
+      finish(e);
+      return;
+    }
+    if (null != conversations) {
+      for (LCIMConversation conversation : conversations) {
+        found.put(conversation.getConversationId(), Common.wrapConversation(conversation));
+      }
+    }
+    if (nextChunk < chunks.size()) {
+      runNext();
+    } else if (0 == runningChunks) {
+      finish(null);
+    }
+  }
+
+  private void finish(LCIMException e) {
+    finished = true;
+    if (null != e) {
+      callback.done(null, e);
+      return;
+    }
+    List<Map<String, Object>> result = new ArrayList<>();
+    for (String conversationId : new LinkedHashSet<>(conversationIds)) {
+      Map<String, Object> conversation = found.get(conversationId);
+      if (null != conversation) {
+        result.add(conversation);
+      }
+    }
+    callback.done(result, null);
+  }
+}
@@ -0,0 +1,238 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.utils.StringUtil;
+
+/**
+ * Bounded inbound queue for transient conversations (chat rooms).
+ *
+ * Messages are queued per conversation and flushed to Dart on the main looper as one
+ * batch event per conversation. When a queue is full the configured overflow policy
+ * decides which message is dropped, and drop counters are sent along with the next batch.
+ * A queue is removed once flushed empty, only its total drop count is kept (bounded by
+ * MAX_TRACKED_TOTALS conversations). Disabling the buffer flushes it at once, so messages
+ * delivered directly afterwards never overtake buffered ones.
+ */
+public class TransientMessageBuffer {
+  public static final int DEFAULT_CAPACITY = 200;
+  public static final int DEFAULT_SAMPLE_RATE = 10;
+  public static final int DEFAULT_FLUSH_INTERVAL = 50;
+  public static final int DEFAULT_BATCH_SIZE = 50;
+  public static final int MAX_TRACKED_TOTALS = 1000;
+
+  private static class Entry {
+    final String from;
+    final Map<String, Object> data;
+
+    Entry(String from, Map<String, Object> data) {
+      this.from = from;
+      this.data = data;
+    }
+  }
+
+  private static class ConversationQueue {
+    final String clientId;
+    final String conversationId;
+    final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    long overflowCount = 0;
+    long dropped = 0;
+
+    ConversationQueue(String clientId, String conversationId) {
+      this.clientId = clientId;
+      this.conversationId = conversationId;
+    }
+  }
+
+  private final IMEventNotification listener;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Map<String, ConversationQueue> queues = new LinkedHashMap<>();
+  private final Map<String, Long> droppedTotals = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+      return size() > MAX_TRACKED_TOTALS;
+    }
+  };
+  private boolean enabled = false;
+  private int capacity = DEFAULT_CAPACITY;
+  private String policy = Common.Inbound_Policy_Drop_Oldest;
+  private int sampleRate = DEFAULT_SAMPLE_RATE;
+  private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private boolean flushScheduled = false;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  public TransientMessageBuffer(IMEventNotification listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * change buffer settings. non-positive values fall back to defaults.
+   *
+   * @param enabled       whether transient conversation messages are buffered.
+   * @param capacity      max queued messages per conversation.
+   * @param policy        overflow policy, one of Common.Inbound_Policy_*.
+   * @param sampleRate    keep 1 of every sampleRate overflowing messages (sample policy only).
+   * @param flushInterval delay in milliseconds between flushes.
+   * @param batchSize     max messages per conversation in one batch event.
+   */
+  public synchronized void configure(boolean enabled, int capacity, String policy, int sampleRate,
+                                     int flushInterval, int batchSize) {
+    this.enabled = enabled;
+    this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+    this.policy = StringUtil.isEmpty(policy) ? Common.Inbound_Policy_Drop_Oldest : policy;
+    this.sampleRate = sampleRate > 0 ? sampleRate : DEFAULT_SAMPLE_RATE;
+    this.flushInterval = flushInterval > 0 ? flushInterval : DEFAULT_FLUSH_INTERVAL;
+    this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    if (!enabled) {
+      // notified with lock held, so a message offered after this call can't overtake the backlog.
+      handler.removeCallbacks(flushTask);
+      notifyBatches(takeBatches());
+    }
+  }
+
+  public synchronized boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * queue one received message.
+   *
+   * @param clientId       client id.
+   * @param conversationId conversation id.
+   * @param from           sender id, used by latestPerSender policy.
+   * @param data           wrapped message data.
+   * @return false if buffer is disabled, the caller should deliver message by itself.
+   */
+  public synchronized boolean offer(String clientId, String conversationId, String from, Map<String, Object> data) {
+    if (!enabled) {
+      return false;
+    }
+    String key = clientId + "/" + conversationId;
+    ConversationQueue queue = queues.get(key);
+    if (null == queue) {
+      queue = new ConversationQueue(clientId, conversationId);
+      queues.put(key, queue);
+    }
+    Entry entry = new Entry(from, data);
+    if (queue.entries.size() < capacity) {
+      queue.entries.addLast(entry);
+    } else if (Common.Inbound_Policy_Sample.equalsIgnoreCase(policy)) {
+      queue.overflowCount++;
+      if (0 == queue.overflowCount % sampleRate) {
+        queue.entries.pollFirst();
+        queue.entries.addLast(entry);
+      }
+      countDropped(key, queue);
+    } else if (Common.Inbound_Policy_Latest_Per_Sender.equalsIgnoreCase(policy)) {
+      if (!removeLastFrom(queue, from)) {
+        queue.entries.pollFirst();
+      }
+      queue.entries.addLast(entry);
+      countDropped(key, queue);
+    } else {
+      queue.entries.pollFirst();
+      queue.entries.addLast(entry);
+      countDropped(key, queue);
+    }
+    scheduleFlush();
+    return true;
+  }
+
+  private void countDropped(String key, ConversationQueue queue) {
+    queue.dropped++;
+    Long total = droppedTotals.get(key);
+    droppedTotals.put(key, null == total ? 1 : total + 1);
+  }
+
+  private static boolean removeLastFrom(ConversationQueue queue, String from) {
+    if (StringUtil.isEmpty(from)) {
+      return false;
+    }
+    Iterator<Entry> it = queue.entries.descendingIterator();
+    while (it.hasNext()) {
+      if (from.equals(it.next().from)) {
+        it.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      handler.postDelayed(flushTask, flushInterval);
+    }
+  }
+
+  private void flush() {
+    List<Map<String, Object>> batches;
+    synchronized (this) {
+      flushScheduled = false;
+      batches = takeBatches();
+      if (!queues.isEmpty()) {
+        scheduleFlush();
+      }
+    }
+    notifyBatches(batches);
+  }
+
+  // called with lock held, takes one batch of every queue and removes queues left empty.
+  private List<Map<String, Object>> takeBatches() {
+    List<Map<String, Object>> batches = new ArrayList<>();
+    int limit = enabled ? batchSize : Integer.MAX_VALUE;
+    Iterator<Map.Entry<String, ConversationQueue>> it = queues.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, ConversationQueue> entry = it.next();
+      ConversationQueue queue = entry.getValue();
+      List<Map<String, Object>> messages = new ArrayList<>();
+      while (!queue.entries.isEmpty() && messages.size() < limit) {
+        messages.add(queue.entries.pollFirst().data);
+      }
+      if (!messages.isEmpty() || queue.dropped > 0) {
+        Long total = droppedTotals.get(entry.getKey());
+        Map<String, Object> param = new HashMap<>();
+        param.put(Common.Param_Client_Id, queue.clientId);
+        param.put(Common.Param_Conv_Id, queue.conversationId);
+        param.put(Common.Param_Messages, messages);
+        param.put(Common.Param_Dropped, queue.dropped);
+        param.put(Common.Param_Dropped_Total, null == total ? 0L : total);
+        queue.dropped = 0;
+        batches.add(param);
+      }
+      if (queue.entries.isEmpty()) {
+        it.remove();
+      }
+    }
+    return batches;
+  }
+
+  private void notifyBatches(List<Map<String, Object>> batches) {
+    for (Map<String, Object> param : batches) {
+      this.listener.notify(Common.Method_Message_Batch_Received, param);
+    }
+  }
+
+  /**
+   * @return number of conversations with queued messages.
+   */
+  public synchronized int queueCount() {
+    return queues.size();
+  }
+}
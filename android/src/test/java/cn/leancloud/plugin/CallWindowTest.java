@@ -0,0 +1,171 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class CallWindowTest {
+  /**
+   * keeps the window result of every started call, and the values delivered to callers.
+   */
+  private static class Recorder {
+    final List<Integer> started = new ArrayList<>();
+    final List<MethodChannel.Result> windowResults = new ArrayList<>();
+    final List<Object> delivered = new ArrayList<>();
+
+    CallWindow.Call call(final int index) {
+      return new CallWindow.Call() {
+        @Override
+        public void run(MethodChannel.Result result) {
+          started.add(index);
+          windowResults.add(result);
+        }
+      };
+    }
+
+    MethodChannel.Result result() {
+      return new MethodChannel.Result() {
+        @Override
+        public void success(Object value) {
+          delivered.add(value);
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+          delivered.add(errorCode);
+        }
+
+        @Override
+        public void notImplemented() {
+        }
+      };
+    }
+  }
+
+  private CallWindow window;
+  private Recorder recorder;
+
+  @Before
+  public void setUp() {
+    window = new CallWindow();
+    recorder = new Recorder();
+  }
+
+  private void submit(String method, int index) {
+    window.submit(method, recorder.call(index), recorder.result());
+  }
+
+  private Map<String, Object> statsOf(String methodClass) {
+    return (Map<String, Object>) window.snapshot().get(methodClass);
+  }
+
+  @Test
+  public void methodsAreClassified() {
+    assertEquals(CallWindow.Class_Send, CallWindow.classOf(Common.Method_Send_Message));
+    assertEquals(CallWindow.Class_Query, CallWindow.classOf(Common.Method_Query_Conversation));
+    assertEquals(CallWindow.Class_Update, CallWindow.classOf(Common.Method_Update_Members));
+    assertNull(CallWindow.classOf(Common.Method_Create_Conversation));
+    assertFalse(window.configure("unknown", 1, 1));
+  }
+
+  @Test
+  public void unboundedByDefault() {
+    for (int i = 0; i < 10; i++) {
+      submit(Common.Method_Query_Message, i);
+    }
+    assertEquals(10, recorder.started.size());
+  }
+
+  @Test
+  public void callsBeyondLimitWaitInOrder() {
+    assertTrue(window.configure(CallWindow.Class_Query, 1, 2));
+    submit(Common.Method_Query_Message, 0);
+    submit(Common.Method_Query_Conversation, 1);
+    submit(Common.Method_Query_Message, 2);
+    // other classes have their own windows.
+    submit(Common.Method_Send_Message, 3);
+    assertEquals(Arrays.asList(0, 3), recorder.started);
+    assertEquals(2, statsOf(CallWindow.Class_Query).get("queued"));
+
+    recorder.windowResults.get(0).success("first");
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 3, 1), recorder.started);
+    recorder.windowResults.get(2).success("second");
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 3, 1, 2), recorder.started);
+  }
+
+  @Test
+  public void callsBeyondQueueAreRejected() {
+    window.configure(CallWindow.Class_Update, 1, 1);
+    submit(Common.Method_Update_Conversation, 0);
+    submit(Common.Method_Update_Conversation, 1);
+    submit(Common.Method_Update_Conversation, 2);
+
+    assertEquals(Arrays.asList(0), recorder.started);
+    assertEquals(1, recorder.delivered.size());
+    Map rejected = (Map) recorder.delivered.get(0);
+    assertEquals(1L, statsOf(CallWindow.Class_Update).get("rejectedTotal"));
+    assertEquals(Common.wrapException(Exception.ErrorCode_Call_Rejected, Exception.ErrorMsg_Call_Rejected), rejected);
+  }
+
+  @Test
+  public void callLeavesWindowOnlyOnce() {
+    window.configure(CallWindow.Class_Send, 1, 5);
+    submit(Common.Method_Send_Message, 0);
+    submit(Common.Method_Send_Message, 1);
+    submit(Common.Method_Send_Message, 2);
+    recorder.windowResults.get(0).success("first");
+    recorder.windowResults.get(0).error("again", null, null);
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+    assertEquals(1, statsOf(CallWindow.Class_Send).get("inFlight"));
+  }
+
+  @Test
+  public void failingCallLeavesWindow() {
+    window.configure(CallWindow.Class_Send, 1, 5);
+    try {
+      window.submit(Common.Method_Send_Message, new CallWindow.Call() {
+        @Override
+        public void run(MethodChannel.Result result) {
+          throw new IllegalStateException();
+        }
+      }, recorder.result());
+    } catch (IllegalStateException ignored) {
+    }
+    submit(Common.Method_Send_Message, 1);
+    assertEquals(Arrays.asList(1), recorder.started);
+  }
+
+  @Test
+  public void raisingLimitRunsQueuedCalls() {
+    window.configure(CallWindow.Class_Query, 1, 5);
+    submit(Common.Method_Query_Message, 0);
+    submit(Common.Method_Query_Message, 1);
+    submit(Common.Method_Query_Message, 2);
+    window.configure(CallWindow.Class_Query, 0, 5);
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 1, 2), recorder.started);
+  }
+}
@@ -0,0 +1,64 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMClientOpenOption;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMClientCallback;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ClientWarmupTest {
+  private SdkStandIns sdk;
+  private ClientWarmup warmup;
+
+  private static class RecordingCallback extends LCIMClientCallback {
+    LCIMClient client = null;
+
+    @Override
+    public void done(LCIMClient client, LCIMException e) {
+      this.client = client;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    sdk = new SdkStandIns(2, 0);
+    warmup = new ClientWarmup(sdk);
+  }
+
+  @Test
+  public void preOpenedClientFromProviderIsHandedOver() {
+    warmup.open("c", null);
+    RecordingCallback callback = new RecordingCallback();
+
+    assertTrue(warmup.takeOver("c", null, new LCIMClientOpenOption(), callback));
+    LCIMClient client = sdk.getClient("c", null);
+    assertSame(client, callback.client);
+    // the session opened by the warmup is reused.
+    verify(client, times(1)).open(nullable(LCIMClientOpenOption.class), any(LCIMClientCallback.class));
+  }
+
+  @Test
+  public void otherTagIsOpenedAsUsual() {
+    warmup.open("c", "mobile");
+
+    assertFalse(warmup.takeOver("c", null, new LCIMClientOpenOption(), new RecordingCallback()));
+    assertFalse(warmup.takeOver("d", "mobile", new LCIMClientOpenOption(), new RecordingCallback()));
+  }
+}
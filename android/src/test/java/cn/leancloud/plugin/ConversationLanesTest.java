@@ -0,0 +1,156 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ConversationLanesTest {
+  /**
+   * keeps the lane result of every started task, and the values delivered to callers.
+   */
+  private static class Recorder {
+    final List<Integer> started = new ArrayList<>();
+    final List<MethodChannel.Result> laneResults = new ArrayList<>();
+    final List<Object> delivered = new ArrayList<>();
+
+    ConversationLanes.Task task(final int index) {
+      return new ConversationLanes.Task() {
+        @Override
+        public void run(MethodChannel.Result result) {
+          started.add(index);
+          laneResults.add(result);
+        }
+      };
+    }
+
+    MethodChannel.Result result() {
+      return new MethodChannel.Result() {
+        @Override
+        public void success(Object value) {
+          delivered.add(value);
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+          delivered.add(errorCode);
+        }
+
+        @Override
+        public void notImplemented() {
+        }
+      };
+    }
+  }
+
+  private ConversationLanes lanes;
+  private Recorder recorder;
+
+  @Before
+  public void setUp() {
+    lanes = new ConversationLanes();
+    recorder = new Recorder();
+  }
+
+  private void submit(String key, int index) {
+    lanes.submit(key, recorder.task(index), recorder.result());
+  }
+
+  @Test
+  public void onlyOrderedMethodsGetALane() {
+    assertNull(lanes.laneOf(Common.Method_Send_Message, "c", "conv", false));
+    lanes.setEnabled(true);
+    assertEquals("c/conv", lanes.laneOf(Common.Method_Send_Message, "c", "conv", false));
+    assertEquals("c/conv", lanes.laneOf(Common.Method_Update_Conversation, "c", "conv", false));
+    assertNull(lanes.laneOf(Common.Method_Update_Conversation, "c", "conv", true));
+    assertNull(lanes.laneOf(Common.Method_Query_Member_Count, "c", "conv", false));
+    lanes.setEnabled(false);
+    assertNull(lanes.laneOf(Common.Method_Send_Message, "c", "conv", false));
+  }
+
+  @Test
+  public void tasksOfOneLaneRunInOrderAfterEachOther() {
+    submit("c/conv", 0);
+    submit("c/conv", 1);
+    submit("c/other", 2);
+    assertEquals(Arrays.asList(0, 2), recorder.started);
+
+    recorder.laneResults.get(0).success("first");
+    assertEquals(Arrays.asList(0, 2), recorder.started);
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 2, 1), recorder.started);
+    assertEquals(Arrays.<Object>asList("first"), recorder.delivered);
+  }
+
+  @Test
+  public void laneMovesOnOnlyOnceWhenResultIsDeliveredTwice() {
+    submit("c/conv", 0);
+    submit("c/conv", 1);
+    submit("c/conv", 2);
+    recorder.laneResults.get(0).success("first");
+    recorder.laneResults.get(0).error("again", null, null);
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+  }
+
+  @Test
+  public void laneMovesOnAfterTimeout() {
+    submit("c/conv", 0);
+    submit("c/conv", 1);
+    ShadowLooper.idleMainLooper(ConversationLanes.LANE_TIMEOUT - 1, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(0), recorder.started);
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+
+    // the late result still reaches its caller, and doesn't release the next task.
+    submit("c/conv", 2);
+    recorder.laneResults.get(0).success("late");
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+    assertEquals(Arrays.<Object>asList("late"), recorder.delivered);
+  }
+
+  @Test
+  public void heldResultDoesNotTimeOut() {
+    submit("c/conv", 0);
+    submit("c/conv", 1);
+    ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+    ConversationLanes.setHeld(recorder.laneResults.get(0), true);
+    ShadowLooper.idleMainLooper(2 * ConversationLanes.LANE_TIMEOUT, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(0), recorder.started);
+
+    // the timeout starts over once it's released.
+    ConversationLanes.setHeld(recorder.laneResults.get(0), false);
+    ShadowLooper.idleMainLooper(ConversationLanes.LANE_TIMEOUT - 1, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(0), recorder.started);
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+  }
+
+  @Test
+  public void heldResultStillMovesOnWhenDelivered() {
+    submit("c/conv", 0);
+    submit("c/conv", 1);
+    ConversationLanes.setHeld(recorder.laneResults.get(0), true);
+    recorder.laneResults.get(0).success("done");
+    ShadowLooper.idleMainLooper();
+    assertEquals(Arrays.asList(0, 1), recorder.started);
+  }
+}
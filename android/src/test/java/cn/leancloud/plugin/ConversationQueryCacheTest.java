@@ -0,0 +1,129 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ConversationQueryCacheTest {
+  private static final String KEY = ConversationQueryCache.keyOf("c", "{}", null, 0, 10, 0);
+
+  private ConversationQueryCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new ConversationQueryCache();
+    cache.configure(1000, 5000);
+  }
+
+  private static List<Map<String, Object>> result(String... conversationIds) {
+    List<Map<String, Object>> conversations = new ArrayList<>();
+    for (String id : conversationIds) {
+      Map<String, Object> data = new HashMap<>();
+      data.put("objectId", id);
+      conversations.add(data);
+    }
+    return conversations;
+  }
+
+  private void store(String... conversationIds) {
+    assertTrue(cache.endQuery("c", KEY, result(conversationIds), cache.beginQuery()));
+  }
+
+  @Test
+  public void disabledCacheStoresNothing() {
+    cache.configure(0, 0);
+    assertFalse(cache.isEnabled());
+    assertFalse(cache.endQuery("c", KEY, result("a"), cache.beginQuery()));
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void staleResultIsServedAndRefreshedOnce() {
+    store("a");
+    assertFalse(cache.beginRefresh(KEY));
+
+    ShadowLooper.idleMainLooper(2000, TimeUnit.MILLISECONDS);
+    assertNotNull(cache.get(KEY));
+    assertTrue(cache.beginRefresh(KEY));
+    assertFalse(cache.beginRefresh(KEY));
+
+    ShadowLooper.idleMainLooper(4000, TimeUnit.MILLISECONDS);
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void failedRefreshCanBeRetried() {
+    store("a");
+    ShadowLooper.idleMainLooper(2000, TimeUnit.MILLISECONDS);
+    assertTrue(cache.beginRefresh(KEY));
+    assertFalse(cache.endQuery("c", KEY, null, cache.beginQuery()));
+
+    assertNotNull(cache.get(KEY));
+    assertTrue(cache.beginRefresh(KEY));
+  }
+
+  @Test
+  public void changeDropsResultsOfSameClientOnly() {
+    store("a", "b");
+    cache.invalidate("d", "a");
+    assertNotNull(cache.get(KEY));
+    cache.invalidate("c", "b");
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void queryRunningAcrossChangeIsNotStored() {
+    store("a");
+    ShadowLooper.idleMainLooper(2000, TimeUnit.MILLISECONDS);
+    assertTrue(cache.beginRefresh(KEY));
+    long token = cache.beginQuery();
+    // the change completes while the refresh is on the wire.
+    cache.invalidate("c", "a");
+
+    assertFalse(cache.endQuery("c", KEY, result("a"), token));
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void changeOfOtherConversationDoesNotBlockQuery() {
+    long token = cache.beginQuery();
+    cache.invalidate("c", "z");
+    assertTrue(cache.endQuery("c", KEY, result("a"), token));
+  }
+
+  @Test
+  public void createdConversationDropsAllResultsOfClient() {
+    long token = cache.beginQuery();
+    cache.removeClient("c");
+    assertFalse(cache.endQuery("c", KEY, result("a"), token));
+
+    store("a");
+    cache.removeClient("c");
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void reconfiguringDropsRunningQueries() {
+    long token = cache.beginQuery();
+    cache.configure(1000, 5000);
+    assertFalse(cache.endQuery("c", KEY, result("a"), token));
+  }
+}
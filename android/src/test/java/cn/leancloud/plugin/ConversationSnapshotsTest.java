@@ -0,0 +1,105 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMConversation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConversationSnapshotsTest {
+  private ConversationSnapshots snapshots;
+  private LCIMConversation conversation;
+
+  @Before
+  public void setUp() {
+    snapshots = new ConversationSnapshots();
+    conversation = mock(LCIMConversation.class);
+    when(conversation.getConversationId()).thenReturn("conv");
+  }
+
+  private long seed() {
+    Map<String, Object> attr = new HashMap<>();
+    attr.put("color", "red");
+    attr.put("size", 1);
+    Map<String, Object> data = new HashMap<>();
+    data.put(Common.Param_Conv_Name, "name");
+    data.put(Common.Param_Conv_Attributes, attr);
+    return snapshots.seed("c", "conv", data);
+  }
+
+  private static Map<String, Object> op(String name) {
+    Map<String, Object> op = new HashMap<>();
+    op.put("__op", name);
+    return op;
+  }
+
+  @Test
+  public void seedKeepsVersionForSameData() {
+    long version = seed();
+    assertEquals(version, seed());
+  }
+
+  @Test
+  public void deltaIsBuiltFromChangedAttributes() {
+    long base = seed();
+    Map<String, Object> changed = new HashMap<>();
+    changed.put(Common.Param_Conv_Name, "renamed");
+    changed.put("attr.color", "blue");
+    changed.put("attr.size", op("Delete"));
+    Map<String, Object> param = new HashMap<>();
+    snapshots.fillChange("c", conversation, changed, param);
+
+    assertFalse(param.containsKey(Common.Param_RawData));
+    Map<String, Object> delta = (Map<String, Object>) param.get(Common.Param_Conv_Delta);
+    assertEquals(base, delta.get(ConversationSnapshots.Field_Base));
+    Map<String, Object> set = (Map<String, Object>) delta.get(ConversationSnapshots.Field_Set);
+    assertEquals("renamed", set.get(Common.Param_Conv_Name));
+    assertEquals("blue", ((Map) set.get(Common.Param_Conv_Attributes)).get("color"));
+    assertEquals(Arrays.asList("attr.size"), delta.get(ConversationSnapshots.Field_Unset));
+  }
+
+  @Test
+  public void nestedAttributeMapIsSplitPerKey() {
+    seed();
+    Map<String, Object> attr = new HashMap<>();
+    attr.put("color", "green");
+    Map<String, Object> changed = new HashMap<>();
+    changed.put(Common.Param_Conv_Attributes, attr);
+    Map<String, Object> param = new HashMap<>();
+    snapshots.fillChange("c", conversation, changed, param);
+
+    Map<String, Object> delta = (Map<String, Object>) param.get(Common.Param_Conv_Delta);
+    Map<String, Object> set = (Map<String, Object>) delta.get(ConversationSnapshots.Field_Set);
+    assertEquals("green", ((Map) set.get(Common.Param_Conv_Attributes)).get("color"));
+    assertTrue(((List) delta.get(ConversationSnapshots.Field_Unset)).isEmpty());
+  }
+
+  @Test
+  public void consecutiveDeltasChainVersions() {
+    seed();
+    Map<String, Object> first = new HashMap<>();
+    snapshots.fillChange("c", conversation, changedName("a"), first);
+    Map<String, Object> second = new HashMap<>();
+    snapshots.fillChange("c", conversation, changedName("b"), second);
+
+    Map<String, Object> firstDelta = (Map<String, Object>) first.get(Common.Param_Conv_Delta);
+    Map<String, Object> secondDelta = (Map<String, Object>) second.get(Common.Param_Conv_Delta);
+    assertEquals(firstDelta.get(Common.Param_Version), secondDelta.get(ConversationSnapshots.Field_Base));
+  }
+
+  private static Map<String, Object> changedName(String name) {
+    Map<String, Object> changed = new HashMap<>();
+    changed.put(Common.Param_Conv_Name, name);
+    return changed;
+  }
+}
@@ -0,0 +1,197 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMException;
+import cn.leancloud.im.v2.callback.LCIMConversationCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ConversationUpdateMergerTest {
+  private static class RecordingCompletion implements ConversationUpdateMerger.Completion {
+    int calls = 0;
+    Map<String, Object> setData;
+    List<String> unsetKeys;
+
+    @Override
+    public void onComplete(LCIMException e, Map<String, Object> setData, List<String> unsetKeys) {
+      calls++;
+      this.setData = setData;
+      this.unsetKeys = unsetKeys;
+    }
+  }
+
+  private ConversationUpdateMerger merger;
+  private LCIMConversation conversation;
+
+  @Before
+  public void setUp() {
+    merger = new ConversationUpdateMerger();
+    merger.setWindow(100);
+    conversation = mock(LCIMConversation.class);
+    when(conversation.getConversationId()).thenReturn("conv");
+  }
+
+  private static Map<String, Object> set(String key, Object value) {
+    Map<String, Object> data = new HashMap<>();
+    data.put(key, value);
+    return data;
+  }
+
+  private LCIMConversationCallback awaitRequest(int count) {
+    ArgumentCaptor<LCIMConversationCallback> captor = ArgumentCaptor.forClass(LCIMConversationCallback.class);
+    verify(conversation, times(count)).updateInfoInBackground(captor.capture());
+    return captor.getValue();
+  }
+
+  @Test
+  public void disabledByDefault() {
+    assertFalse(new ConversationUpdateMerger().isEnabled());
+    assertTrue(merger.isEnabled());
+  }
+
+  @Test
+  public void updatesWithinWindowAreSentOnce() {
+    RecordingCompletion first = new RecordingCompletion();
+    RecordingCompletion second = new RecordingCompletion();
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), first);
+    merger.submit("c", conversation, set("attr.a", 2), Collections.<String>emptyList(), second);
+    verify(conversation, never()).updateInfoInBackground(any(LCIMConversationCallback.class));
+
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    verify(conversation).setAttribute("attr.a", 2);
+    awaitRequest(1).done(null);
+
+    assertEquals(1, first.calls);
+    assertEquals(1, second.calls);
+    assertEquals(2, second.setData.get("attr.a"));
+  }
+
+  @Test
+  public void laterDeleteWinsOverEarlierSetAndViceVersa() {
+    RecordingCompletion completion = new RecordingCompletion();
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), completion);
+    merger.submit("c", conversation, new HashMap<String, Object>(), Arrays.asList("attr.a", "attr.b"), completion);
+    merger.submit("c", conversation, set("attr.b", 3), Collections.<String>emptyList(), completion);
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    awaitRequest(1).done(null);
+
+    assertEquals(Collections.<String, Object>singletonMap("attr.b", 3), new HashMap<>(completion.setData));
+    assertEquals(Arrays.asList("attr.a"), completion.unsetKeys);
+    verify(conversation).remove("attr.a");
+    verify(conversation, never()).remove("attr.b");
+  }
+
+  @Test
+  public void updatesDuringFlightWaitForIt() {
+    RecordingCompletion first = new RecordingCompletion();
+    RecordingCompletion second = new RecordingCompletion();
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), first);
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    LCIMConversationCallback inFlight = awaitRequest(1);
+
+    merger.submit("c", conversation, set("attr.a", 2), Collections.<String>emptyList(), second);
+    ShadowLooper.idleMainLooper(500, TimeUnit.MILLISECONDS);
+    // no overlapping request while the first one is pending.
+    awaitRequest(1);
+
+    inFlight.done(null);
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    awaitRequest(2).done(null);
+    assertEquals(1, first.calls);
+    assertEquals(1, second.calls);
+    assertEquals(2, second.setData.get("attr.a"));
+  }
+
+  @Test
+  public void failureCompletesEveryCaller() {
+    final List<LCIMException> errors = new ArrayList<>();
+    ConversationUpdateMerger.Completion completion = new ConversationUpdateMerger.Completion() {
+      @Override
+      public void onComplete(LCIMException e, Map<String, Object> setData, List<String> unsetKeys) {
+        errors.add(e);
+      }
+    };
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), completion);
+    merger.submit("c", conversation, set("attr.b", 1), Collections.<String>emptyList(), completion);
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    LCIMException error = mock(LCIMException.class);
+    awaitRequest(1).done(error);
+
+    assertEquals(Arrays.asList(error, error), errors);
+  }
+
+  private static Map<String, Object> increment(int amount) {
+    Map<String, Object> op = new HashMap<>();
+    op.put("__op", "Increment");
+    op.put("amount", amount);
+    return op;
+  }
+
+  @Test
+  public void operationsAreNeverMerged() {
+    RecordingCompletion plain = new RecordingCompletion();
+    RecordingCompletion first = new RecordingCompletion();
+    RecordingCompletion second = new RecordingCompletion();
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), plain);
+    merger.submit("c", conversation, set("attr.count", increment(1)), Collections.<String>emptyList(), first);
+    merger.submit("c", conversation, set("attr.count", increment(1)), Collections.<String>emptyList(), second);
+
+    // the batch before the operation goes at once, without waiting for the window.
+    ShadowLooper.idleMainLooper();
+    awaitRequest(1).done(null);
+    assertEquals(1, plain.calls);
+    assertEquals(0, first.calls);
+
+    ShadowLooper.idleMainLooper();
+    awaitRequest(2).done(null);
+    ShadowLooper.idleMainLooper();
+    awaitRequest(3).done(null);
+
+    verify(conversation, times(2)).setAttribute("attr.count", increment(1));
+    assertEquals(1, first.calls);
+    assertEquals(1, second.calls);
+  }
+
+  @Test
+  public void plainUpdatesAfterOperationMergeAgain() {
+    RecordingCompletion completion = new RecordingCompletion();
+    merger.submit("c", conversation, set("attr.count", increment(1)), Collections.<String>emptyList(), completion);
+    merger.submit("c", conversation, set("attr.a", 1), Collections.<String>emptyList(), completion);
+    merger.submit("c", conversation, set("attr.a", 2), Collections.<String>emptyList(), completion);
+    ShadowLooper.idleMainLooper();
+    awaitRequest(1).done(null);
+
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    awaitRequest(2).done(null);
+    assertEquals(2, completion.setData.get("attr.a"));
+    assertEquals(3, completion.calls);
+  }
+}
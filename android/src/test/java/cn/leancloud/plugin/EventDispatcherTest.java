@@ -0,0 +1,224 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class EventDispatcherTest {
+  private static final String CHANNEL = "leancloud_plugin";
+
+  /**
+   * decodes every call sent to Dart.
+   */
+  private static class RecordingMessenger extends FakeBinaryMessenger {
+    final List<MethodCall> calls = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      ByteBuffer copy = message.duplicate();
+      if (copy.position() > 0) {
+        copy.flip();
+      }
+      calls.add(StandardMethodCodec.INSTANCE.decodeMethodCall(copy));
+      super.send(channel, message, callback);
+    }
+  }
+
+  private EventDispatcher dispatcher;
+  private RecordingMessenger messenger;
+
+  @Before
+  public void setUp() {
+    dispatcher = new EventDispatcher(null);
+    messenger = new RecordingMessenger();
+  }
+
+  private EventDispatcher.Route attach() {
+    return dispatcher.attach(new MethodChannel(messenger, CHANNEL));
+  }
+
+  private static Map<String, Object> event(String clientId, int index) {
+    Map<String, Object> param = new HashMap<>();
+    param.put(Common.Param_Client_Id, clientId);
+    param.put("index", index);
+    return param;
+  }
+
+  private static int indexOf(Object param) {
+    return (Integer) ((Map) param).get("index");
+  }
+
+  @Test
+  public void eventsBeforeOpenAreReplayedBeforeLiveEvents() {
+    EventDispatcher.Route route = attach();
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    ShadowLooper.idleMainLooper();
+    // attached, but Dart doesn't know client c yet.
+    assertTrue(messenger.calls.isEmpty());
+
+    // queued before openClient completes, drained after it.
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 2), null);
+    dispatcher.bindClient("c", route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 3), null);
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(3, messenger.calls.size());
+    MethodCall replay = messenger.calls.get(0);
+    assertEquals(Common.Method_Event_Replay, replay.method);
+    List events = (List) ((Map) replay.arguments).get(Common.Param_Events);
+    assertEquals(1, events.size());
+    assertEquals(1, indexOf(((Map) events.get(0)).get("args")));
+    assertEquals(2, indexOf(messenger.calls.get(1).arguments));
+    assertEquals(3, indexOf(messenger.calls.get(2).arguments));
+  }
+
+  @Test
+  public void failedOpenDropsBufferedEvents() {
+    EventDispatcher.Route route = attach();
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    ShadowLooper.idleMainLooper();
+    dispatcher.bindClient("c", route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 2), null);
+    ShadowLooper.idleMainLooper();
+    // replay and the event of the opening session went out live.
+    assertEquals(2, messenger.calls.size());
+
+    dispatcher.unbindClient("c", route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 3), null);
+    ShadowLooper.idleMainLooper();
+    assertEquals(2, messenger.calls.size());
+    assertEquals(1, dispatcher.getReplayBuffer().size());
+
+    dispatcher.unbindClient("c", route);
+    assertEquals(0, dispatcher.getReplayBuffer().size());
+  }
+
+  @Test
+  public void eventsOfOtherClientsStayBuffered() {
+    EventDispatcher.Route route = attach();
+    dispatcher.bindClient("c", route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    dispatcher.dispatch(Common.Method_Message_Received, event("d", 2), null);
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(1, messenger.calls.size());
+    assertEquals(1, dispatcher.getReplayBuffer().size());
+
+    dispatcher.bindClient("d", route);
+    ShadowLooper.idleMainLooper();
+    assertEquals(2, messenger.calls.size());
+    assertEquals(Common.Method_Event_Replay, messenger.calls.get(1).method);
+    assertEquals(0, dispatcher.getReplayBuffer().size());
+  }
+
+  @Test
+  public void controlEventsOvertakeQueuedBulkEvents() {
+    EventDispatcher.Route route = attach();
+    dispatcher.bindClient("c", route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 2), null);
+    dispatcher.dispatch(Common.Method_Client_Disconnected, event("c", 3), null);
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(3, messenger.calls.size());
+    assertEquals(Common.Method_Client_Disconnected, messenger.calls.get(0).method);
+    assertEquals(1, indexOf(messenger.calls.get(1).arguments));
+    assertEquals(2, indexOf(messenger.calls.get(2).arguments));
+  }
+
+  @Test
+  public void bulkEventsAreSentInSlicesInOrder() {
+    EventDispatcher.Route route = attach();
+    dispatcher.bindClient("c", route);
+    dispatcher.setBulkSlice(2);
+    for (int i = 0; i < 5; i++) {
+      dispatcher.dispatch(Common.Method_Message_Received, event("c", i), null);
+    }
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(5, messenger.calls.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, indexOf(messenger.calls.get(i).arguments));
+    }
+  }
+
+  @Test
+  public void callbackEventsFailFastWhileDetached() {
+    final int[] notImplemented = new int[]{0};
+    dispatcher.dispatch(Common.Method_Sign_SessionOpen, event("c", 1), new MethodChannel.Result() {
+      @Override
+      public void success(Object result) {
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+      }
+
+      @Override
+      public void notImplemented() {
+        notImplemented[0]++;
+      }
+    });
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(1, notImplemented[0]);
+    assertEquals(0, dispatcher.getReplayBuffer().size());
+  }
+
+  @Test
+  public void detachedEventsAreReplayedOnceReopened() {
+    EventDispatcher.Route route = attach();
+    dispatcher.bindClient("c", route);
+    dispatcher.detach(route);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    ShadowLooper.idleMainLooper();
+    assertTrue(messenger.calls.isEmpty());
+
+    EventDispatcher.Route next = attach();
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 2), null);
+    ShadowLooper.idleMainLooper();
+    assertTrue(messenger.calls.isEmpty());
+
+    dispatcher.bindClient("c", next);
+    ShadowLooper.idleMainLooper();
+    assertEquals(1, messenger.calls.size());
+    List events = (List) ((Map) messenger.calls.get(0).arguments).get(Common.Param_Events);
+    assertEquals(2, events.size());
+  }
+
+  @Test
+  public void eventsWithoutClientAreNotBuffered() {
+    EventReplayBuffer buffer = dispatcher.getReplayBuffer();
+    buffer.setCapacity(2);
+    dispatcher.dispatch(Common.Method_Message_Received, event("c", 1), null);
+    ShadowLooper.idleMainLooper();
+    for (int i = 0; i < 5; i++) {
+      dispatcher.dispatch(Common.Method_Metrics_Snapshot, new HashMap<String, Object>(), null);
+    }
+    ShadowLooper.idleMainLooper();
+
+    // snapshots can't be replayed to any client, they must not push out real events.
+    assertEquals(1, buffer.size());
+    assertEquals(1, ((List) buffer.take("c").get(Common.Param_Events)).size());
+  }
+}
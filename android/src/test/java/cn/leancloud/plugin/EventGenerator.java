@@ -0,0 +1,78 @@
+package cn.leancloud.plugin;
+
+import java.util.Arrays;
+
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.messages.LCIMTextMessage;
+
+/**
+ * Feeds SDK events into the plugin's handlers at fixed rates, the way the SDK would on incoming traffic.
+ */
+public class EventGenerator {
+  private final SdkStandIns sdk;
+  private final String clientId;
+  private final String[] conversationIds;
+  private final DefaultMessageHandler messageHandler;
+  private final DefaultConversationEventHandler conversationHandler;
+  private final int messageRate;
+  private final int memberEventRate;
+  private final int unreadRate;
+  private long messages = 0;
+  private long memberEvents = 0;
+  private long unreadEvents = 0;
+
+  /**
+   * @param sdk             stand-ins which own the client and conversations.
+   * @param clientId        receiving client.
+   * @param conversationIds conversations events are spread over.
+   * @param messageRate     messages per second.
+   * @param memberEventRate member joined events per second.
+   * @param unreadRate      unread count updates per second.
+   */
+  public EventGenerator(SdkStandIns sdk, String clientId, String[] conversationIds,
+                        int messageRate, int memberEventRate, int unreadRate) {
+    this.sdk = sdk;
+    this.clientId = clientId;
+    this.conversationIds = conversationIds;
+    this.messageRate = messageRate;
+    this.memberEventRate = memberEventRate;
+    this.unreadRate = unreadRate;
+    // same handlers the plugin registers with the SDK, caches included.
+    this.messageHandler = LeancloudPlugin.newMessageHandler();
+    this.conversationHandler = LeancloudPlugin.newConversationEventHandler();
+  }
+
+  /**
+   * emit every event that is due at elapsedMillis since start.
+   *
+   * @param elapsedMillis time since start.
+   * @return number of events emitted.
+   */
+  public int emitUntil(long elapsedMillis) {
+    LCIMClient client = sdk.getClient(clientId, null);
+    int emitted = 0;
+    for (long due = messageRate * elapsedMillis / 1000; messages < due; messages++, emitted++) {
+      LCIMConversation conversation = conversation(messages);
+      LCIMTextMessage message = new LCIMTextMessage();
+      message.setText("load test message " + messages);
+      message.setMessageId("generated_" + messages);
+      message.setFrom("member_1");
+      message.setConversationId(conversation.getConversationId());
+      message.setTimestamp(System.currentTimeMillis());
+      messageHandler.onMessage(message, conversation, client);
+    }
+    for (long due = memberEventRate * elapsedMillis / 1000; memberEvents < due; memberEvents++, emitted++) {
+      conversationHandler.onMemberJoined(client, conversation(memberEvents),
+          Arrays.asList("joined_" + memberEvents), "member_1");
+    }
+    for (long due = unreadRate * elapsedMillis / 1000; unreadEvents < due; unreadEvents++, emitted++) {
+      conversationHandler.onUnreadMessagesCountUpdated(client, conversation(unreadEvents));
+    }
+    return emitted;
+  }
+
+  private LCIMConversation conversation(long sequence) {
+    return sdk.getConversation(clientId, conversationIds[(int) (sequence % conversationIds.length)]);
+  }
+}
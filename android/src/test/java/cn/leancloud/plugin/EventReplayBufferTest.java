@@ -0,0 +1,86 @@
+package cn.leancloud.plugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+public class EventReplayBufferTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Map<String, Object> event(String clientId, long timestamp) {
+    Map<String, Object> param = new HashMap<>();
+    param.put(Common.Param_Client_Id, clientId);
+    param.put("timestamp", timestamp);
+    param.put("binary", new byte[]{1, 2, 3});
+    return param;
+  }
+
+  @Test
+  public void persistedEventsKeepTheirTypes() throws java.lang.Exception {
+    File file = folder.newFile("replay");
+    EventReplayBuffer buffer = new EventReplayBuffer();
+    buffer.setPersistFile(file);
+    buffer.add(Common.Method_Message_Received, event("c", 1L));
+    buffer.awaitSaved();
+
+    EventReplayBuffer restored = new EventReplayBuffer();
+    restored.setPersistFile(file);
+    List events = (List) restored.take("c").get(Common.Param_Events);
+    assertEquals(1, events.size());
+    Map args = (Map) ((Map) events.get(0)).get("args");
+    assertEquals(1L, args.get("timestamp"));
+    assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) args.get("binary"));
+  }
+
+  @Test
+  public void addsAreAppendedAndTakesCompactTheFile() throws java.lang.Exception {
+    File file = folder.newFile("replay");
+    EventReplayBuffer buffer = new EventReplayBuffer();
+    buffer.setPersistFile(file);
+    buffer.add(Common.Method_Message_Received, event("c", 1L));
+    buffer.awaitSaved();
+    long one = file.length();
+    buffer.add(Common.Method_Message_Received, event("c", 2L));
+    buffer.add(Common.Method_Message_Received, event("d", 3L));
+    buffer.awaitSaved();
+    assertEquals(3 * one, file.length());
+
+    buffer.take("c");
+    buffer.awaitSaved();
+    assertEquals(one, file.length());
+
+    EventReplayBuffer restored = new EventReplayBuffer();
+    restored.setPersistFile(file);
+    assertNull(restored.take("c"));
+    assertEquals(1, ((List) restored.take("d").get(Common.Param_Events)).size());
+  }
+
+  @Test
+  public void unreadableFileIsReplaced() throws java.lang.Exception {
+    File file = folder.newFile("replay");
+    java.io.FileOutputStream os = new java.io.FileOutputStream(file);
+    os.write("[{\"method\":\"onMessageReceive\"}]".getBytes("UTF-8"));
+    os.close();
+    EventReplayBuffer buffer = new EventReplayBuffer();
+    buffer.setPersistFile(file);
+    buffer.awaitSaved();
+
+    assertEquals(0, buffer.size());
+    assertEquals(0, file.length());
+  }
+}
@@ -0,0 +1,68 @@
+package cn.leancloud.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * BinaryMessenger standing in for the Dart side.
+ *
+ * Messages sent to Dart are counted and dropped, calls expecting a reply (e.g. signature requests)
+ * get an empty reply, which MethodChannel reports as notImplemented.
+ */
+public class FakeBinaryMessenger implements BinaryMessenger {
+  private final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+  private long sentCount = 0;
+  private long sentBytes = 0;
+
+  @Override
+  public void send(String channel, ByteBuffer message) {
+    send(channel, message, null);
+  }
+
+  @Override
+  public void send(String channel, ByteBuffer message, BinaryReply callback) {
+    sentCount++;
+    if (null != message) {
+      sentBytes += message.position() > 0 ? message.position() : message.remaining();
+    }
+    if (null != callback) {
+      callback.reply(null);
+    }
+  }
+
+  @Override
+  public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+    if (null == handler) {
+      handlers.remove(channel);
+    } else {
+      handlers.put(channel, handler);
+    }
+  }
+
+  /**
+   * deliver a message from Dart to the handler of channel.
+   *
+   * @param channel channel name.
+   * @param message encoded method call, positioned at 0.
+   * @param reply   reply callback.
+   */
+  public void receive(String channel, ByteBuffer message, BinaryReply reply) {
+    BinaryMessageHandler handler = handlers.get(channel);
+    if (null == handler) {
+      reply.reply(null);
+      return;
+    }
+    handler.onMessage(message, reply);
+  }
+
+  public long getSentCount() {
+    return sentCount;
+  }
+
+  public long getSentBytes() {
+    return sentBytes;
+  }
+}
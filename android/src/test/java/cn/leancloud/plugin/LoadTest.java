@@ -0,0 +1,171 @@
+package cn.leancloud.plugin;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.leancloud.im.v2.messages.LCIMTextMessage;
+import cn.leancloud.json.JSON;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodCodec;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Load test of the plugin on the JVM: Dart calls go through a fake BinaryMessenger into
+ * LeancloudPlugin.onMethodCall, SDK objects are in-memory stand-ins, and EventGenerator feeds
+ * incoming traffic into the SDK handlers. Main looper is Robolectric's, advanced every tick.
+ *
+ *   ./gradlew testDebugUnitTest --tests cn.leancloud.plugin.LoadTest -Ploadtest=true \
+ *       -Ploadtest.duration=30 -Ploadtest.messageRate=2000
+ *
+ * Properties (default):
+ *   loadtest.duration      seconds (10)
+ *   loadtest.callRate      sendMessage calls per second (200)
+ *   loadtest.messageRate   incoming messages per second (1000)
+ *   loadtest.memberRate    member joined events per second (50)
+ *   loadtest.unreadRate    unread count updates per second (100)
+ *   loadtest.conversations conversations traffic is spread over (20)
+ *   loadtest.members       members per conversation (100)
+ *   loadtest.ackDelay      stand-in acknowledge delay in milliseconds (0)
+ *
+ * Reports throughput, bytes sent to Dart, allocation rate of the main thread, call latency
+ * percentiles and the PluginMetrics snapshot on stdout.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class LoadTest {
+  private static final String CHANNEL = "leancloud_plugin";
+  private static final String CLIENT_ID = "loadtest_client";
+  private static final long TICK_MILLIS = 10;
+
+  private final MethodCodec codec = new StandardMethodCodec(new LeanCloudMessageCodec());
+  private final LatencyHistogram callLatency = new LatencyHistogram();
+  private LeancloudPlugin plugin = null;
+  private long replies = 0;
+
+  private static int property(String key, int defaultValue) {
+    return Integer.parseInt(System.getProperty("loadtest." + key, String.valueOf(defaultValue)));
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private void call(FakeBinaryMessenger messenger, String method, Map<String, Object> args,
+                    final boolean measured) {
+    ByteBuffer message = codec.encodeMethodCall(new MethodCall(method, args));
+    message.flip();
+    final long start = System.nanoTime();
+    messenger.receive(CHANNEL, message, new BinaryMessenger.BinaryReply() {
+      @Override
+      public void reply(ByteBuffer reply) {
+        if (measured) {
+          callLatency.recordNanos(System.nanoTime() - start);
+          replies++;
+        }
+      }
+    });
+  }
+
+  private Map<String, Object> sendMessageArgs(String conversationId, long sequence) {
+    LCIMTextMessage message = new LCIMTextMessage();
+    message.setText("load test call " + sequence);
+    Map<String, Object> args = new HashMap<>();
+    args.put(Common.Param_Client_Id, CLIENT_ID);
+    args.put(Common.Param_Conv_Id, conversationId);
+    args.put(Common.Param_Message_Raw, Common.wrapMessage(message));
+    args.put(Common.Param_Call_Time, System.currentTimeMillis());
+    return args;
+  }
+
+  @Test
+  public void run() {
+    Assume.assumeTrue(Boolean.parseBoolean(System.getProperty("loadtest", "false")));
+    int duration = property("duration", 10);
+    int callRate = property("callRate", 200);
+    int conversationCount = property("conversations", 20);
+    String[] conversationIds = new String[conversationCount];
+    for (int i = 0; i < conversationCount; i++) {
+      conversationIds[i] = "loadtest_conversation_" + i;
+    }
+
+    SdkStandIns sdk = new SdkStandIns(property("members", 100), property("ackDelay", 0));
+    LeancloudPlugin.setClientProvider(sdk);
+    FakeBinaryMessenger messenger = new FakeBinaryMessenger();
+    plugin = new LeancloudPlugin();
+    plugin.attach(messenger);
+
+    Map<String, Object> openArgs = new HashMap<>();
+    openArgs.put(Common.Param_Client_Id, CLIENT_ID);
+    call(messenger, Common.Method_Open_Client, openArgs, false);
+    ShadowLooper.idleMainLooper();
+
+    EventGenerator generator = new EventGenerator(sdk, CLIENT_ID, conversationIds,
+        property("messageRate", 1000), property("memberRate", 50), property("unreadRate", 100));
+    long calls = 0;
+    long events = 0;
+    long startAllocated = allocatedBytes();
+    long startSent = messenger.getSentBytes();
+    long startCount = messenger.getSentCount();
+    long start = System.nanoTime();
+    long elapsed = 0;
+    while (elapsed < duration * 1000L) {
+      events += generator.emitUntil(elapsed);
+      for (long due = callRate * elapsed / 1000; calls < due; calls++) {
+        call(messenger, Common.Method_Send_Message,
+            sendMessageArgs(conversationIds[(int) (calls % conversationCount)], calls), true);
+      }
+      ShadowLooper.idleMainLooper(TICK_MILLIS, TimeUnit.MILLISECONDS);
+      long next = elapsed + TICK_MILLIS;
+      elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      if (elapsed < next) {
+        try {
+          Thread.sleep(next - elapsed);
+        } catch (InterruptedException ex) {
+          break;
+        }
+        elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      }
+    }
+    ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long allocated = allocatedBytes() - startAllocated;
+
+    System.out.println("=== LeancloudPlugin load test, " + String.format("%.1f", seconds) + "s");
+    System.out.println(String.format("calls:     %d sent, %d replied, %.0f/s", calls, replies, calls / seconds));
+    System.out.println(String.format("events:    %d generated, %.0f/s", events, events / seconds));
+    System.out.println(String.format("to dart:   %d messages, %d bytes, %.0f messages/s",
+        messenger.getSentCount() - startCount, messenger.getSentBytes() - startSent,
+        (messenger.getSentCount() - startCount) / seconds));
+    System.out.println(String.format("alloc:     %.1f MB/s on main thread", allocated / seconds / 1024 / 1024));
+    System.out.println("latency:   " + callLatency.snapshot());
+    System.out.println("metrics:   " + JSON.toJSONString(LeancloudPlugin.getMetrics().snapshot()));
+    System.out.println("dispatch:  " + JSON.toJSONString(LeancloudPlugin.getEventDispatcher().getStats()));
+  }
+
+  @After
+  public void tearDown() {
+    if (null != plugin) {
+      plugin.onDetachedFromEngine(mock(FlutterPlugin.FlutterPluginBinding.class));
+      plugin = null;
+    }
+    LeancloudPlugin.setClientProvider(null);
+  }
+}
@@ -0,0 +1,72 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MemberCountCacheTest {
+  private MemberCountCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new MemberCountCache();
+    cache.setMaxAge(1000);
+  }
+
+  @Test
+  public void countFollowsMembershipEvents() {
+    cache.put("c", "conv", 3);
+    cache.adjust("c", "conv", 2);
+    cache.adjust("c", "conv", -1);
+    assertEquals(Integer.valueOf(4), cache.get("c", "conv"));
+
+    cache.adjust("c", "conv", -10);
+    assertEquals(Integer.valueOf(0), cache.get("c", "conv"));
+  }
+
+  @Test
+  public void eventsDoNotCreateCounts() {
+    cache.adjust("c", "conv", 1);
+    assertNull(cache.get("c", "conv"));
+  }
+
+  @Test
+  public void countExpiresAfterMaxAge() {
+    cache.put("c", "conv", 3);
+    ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+    assertEquals(Integer.valueOf(3), cache.get("c", "conv"));
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertNull(cache.get("c", "conv"));
+  }
+
+  @Test
+  public void disabledCacheKeepsNothing() {
+    cache.put("c", "conv", 3);
+    cache.setMaxAge(0);
+    assertNull(cache.get("c", "conv"));
+    cache.put("c", "conv", 3);
+    assertNull(cache.get("c", "conv"));
+  }
+
+  @Test
+  public void removeClientKeepsOtherClients() {
+    cache.put("c", "conv", 3);
+    cache.put("cc", "conv", 4);
+    cache.invalidate("cc", "other");
+    cache.removeClient("c");
+    assertNull(cache.get("c", "conv"));
+    assertEquals(Integer.valueOf(4), cache.get("cc", "conv"));
+  }
+}
@@ -0,0 +1,140 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.leancloud.im.v2.LCIMConversation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ReadSchedulerTest {
+  private RecordingNotification listener;
+  private ReadScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    listener = new RecordingNotification();
+    scheduler = new ReadScheduler(listener);
+    scheduler.setWindow(100);
+  }
+
+  private static LCIMConversation conversation(String id, int unread) {
+    LCIMConversation conversation = mock(LCIMConversation.class);
+    when(conversation.getConversationId()).thenReturn(id);
+    when(conversation.getUnreadMessagesCount()).thenReturn(unread);
+    return conversation;
+  }
+
+  private static Map<String, Object> unreadEvent(String conversationId, int count) {
+    Map<String, Object> param = new HashMap<>();
+    param.put(Common.Param_Client_Id, "c");
+    param.put(Common.Param_Conv_Id, conversationId);
+    param.put(Common.Param_Count, count);
+    param.put(Common.Param_Mention, true);
+    return param;
+  }
+
+  @Test
+  public void markReportsZeroAtOnceAndAcksAfterWindow() {
+    LCIMConversation conversation = conversation("conv", 3);
+    scheduler.mark("c", conversation);
+
+    assertEquals(1, listener.of(Common.Method_Conv_UnreadCount_Updated).size());
+    Map param = (Map) listener.events.get(0).param;
+    assertEquals(0, param.get(Common.Param_Count));
+    verify(conversation, never()).read();
+
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    verify(conversation).read();
+  }
+
+  @Test
+  public void marksWithinWindowAckOnce() {
+    LCIMConversation first = conversation("conv", 3);
+    LCIMConversation second = conversation("other", 1);
+    scheduler.mark("c", first);
+    scheduler.mark("c", first);
+    scheduler.mark("c", second);
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+    verify(first).read();
+    verify(second).read();
+  }
+
+  @Test
+  public void nonPositiveWindowAcksAtOnce() {
+    scheduler.setWindow(0);
+    LCIMConversation conversation = conversation("conv", 0);
+    scheduler.mark("c", conversation);
+    verify(conversation).read();
+    assertEquals(0, listener.events.size());
+  }
+
+  @Test
+  public void unreadEventOfPendingConversationSkipsReadMessages() {
+    scheduler.mark("c", conversation("conv", 3));
+
+    Map<String, Object> stale = unreadEvent("conv", 3);
+    scheduler.adjustUnread(stale);
+    assertEquals(0, stale.get(Common.Param_Count));
+    assertFalse((Boolean) stale.get(Common.Param_Mention));
+
+    // a message arrived after the mark.
+    Map<String, Object> fresh = unreadEvent("conv", 4);
+    scheduler.adjustUnread(fresh);
+    assertEquals(1, fresh.get(Common.Param_Count));
+
+    Map<String, Object> other = unreadEvent("other", 2);
+    scheduler.adjustUnread(other);
+    assertEquals(2, other.get(Common.Param_Count));
+  }
+
+  @Test
+  public void unreadEventsPassUnchangedOnceAcked() {
+    scheduler.mark("c", conversation("conv", 3));
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+    Map<String, Object> param = unreadEvent("conv", 1);
+    scheduler.adjustUnread(param);
+    assertEquals(1, param.get(Common.Param_Count));
+  }
+
+  @Test
+  public void flushClientSendsOnlyItsPendingAcks() {
+    LCIMConversation conversation = conversation("conv", 3);
+    LCIMConversation other = conversation("conv", 3);
+    scheduler.mark("c", conversation);
+    scheduler.mark("d", other);
+    scheduler.flushClient("c");
+    verify(conversation).read();
+    verify(other, never()).read();
+
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    verify(conversation).read();
+    verify(other).read();
+  }
+
+  @Test
+  public void acksAreSentAtOnceByDefault() {
+    LCIMConversation conversation = conversation("conv", 3);
+    new ReadScheduler(listener).mark("c", conversation);
+    verify(conversation).read();
+  }
+}
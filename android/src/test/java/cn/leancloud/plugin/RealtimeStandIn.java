@@ -0,0 +1,264 @@
+package cn.leancloud.plugin;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.leancloud.command.Messages;
+
+/**
+ * Local websocket server speaking enough of the realtime protocol (protobuf GenericCommand over
+ * the lc.protobuf2.3 subprotocol) for the SDK to open sessions, send and receive direct messages
+ * and get member events:
+ *
+ *   session open/close  answered with opened/closed
+ *   direct              acknowledged with a server message id and timestamp
+ *   ack                 receipts of pushed messages, counted
+ *
+ * Other requests are counted by command type and left unanswered, so the SDK times them out.
+ * The test side pushes traffic with pushMessage/pushMembersJoined/pushMembersLeft and drops a
+ * session's socket without a close frame with disconnect, which the SDK sees as a network failure.
+ */
+public class RealtimeStandIn extends WebSocketServer {
+  public static final String SUBPROTOCOL = "lc.protobuf2.3";
+
+  private final Map<String, WebSocket> sessions = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> unhandled = new ConcurrentHashMap<>();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final AtomicLong messageIds = new AtomicLong();
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong pushed = new AtomicLong();
+  private final AtomicLong acked = new AtomicLong();
+
+  /**
+   * @param port listening port on 127.0.0.1, 0 picks a free one.
+   */
+  public RealtimeStandIn(int port) {
+    super(new InetSocketAddress("127.0.0.1", port), Collections.<Draft>singletonList(
+        new Draft_6455(Collections.<IExtension>emptyList(),
+            Collections.<IProtocol>singletonList(new Protocol(SUBPROTOCOL)))));
+    setReuseAddr(true);
+  }
+
+  /**
+   * start listening and wait until the server socket is bound.
+   *
+   * @return rtm server url to hand to LCIMOptions#setRtmServer.
+   */
+  public String startAndWait() throws InterruptedException {
+    start();
+    if (!started.await(10, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("realtime stand-in didn't start");
+    }
+    return "ws://127.0.0.1:" + getPort();
+  }
+
+  @Override
+  public void onStart() {
+    started.countDown();
+  }
+
+  @Override
+  public void onOpen(WebSocket conn, ClientHandshake handshake) {
+  }
+
+  @Override
+  public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    String peerId = conn.getAttachment();
+    if (null != peerId) {
+      sessions.remove(peerId, conn);
+    }
+  }
+
+  @Override
+  public void onMessage(WebSocket conn, String message) {
+    count("text");
+  }
+
+  @Override
+  public void onMessage(WebSocket conn, ByteBuffer message) {
+    Messages.GenericCommand command;
+    try {
+      byte[] bytes = new byte[message.remaining()];
+      message.get(bytes);
+      command = Messages.GenericCommand.parseFrom(bytes);
+    } catch (java.lang.Exception ex) {
+      count("malformed");
+      return;
+    }
+    switch (command.getCmd()) {
+      case session:
+        onSession(conn, command);
+        break;
+      case direct:
+        onDirect(conn, command);
+        break;
+      case ack:
+        acked.incrementAndGet();
+        break;
+      default:
+        count(command.getCmd().name());
+        break;
+    }
+  }
+
+  @Override
+  public void onError(WebSocket conn, java.lang.Exception ex) {
+    if (null == conn) {
+      ex.printStackTrace();
+    }
+  }
+
+  private void onSession(WebSocket conn, Messages.GenericCommand command) {
+    Messages.GenericCommand.Builder reply = Messages.GenericCommand.newBuilder()
+        .setCmd(Messages.CommandType.session)
+        .setPeerId(command.getPeerId())
+        .setI(command.getI());
+    if (Messages.OpType.open == command.getOp()) {
+      conn.setAttachment(command.getPeerId());
+      sessions.put(command.getPeerId(), conn);
+      opened.incrementAndGet();
+      reply.setOp(Messages.OpType.opened)
+          .setSessionMessage(Messages.SessionCommand.newBuilder()
+              .setSt("standin_" + command.getPeerId())
+              .setStTtl(3600));
+    } else if (Messages.OpType.close == command.getOp()) {
+      sessions.remove(command.getPeerId(), conn);
+      reply.setOp(Messages.OpType.closed);
+    } else {
+      count("session." + command.getOp().name());
+      return;
+    }
+    conn.send(reply.build().toByteArray());
+  }
+
+  private void onDirect(WebSocket conn, Messages.GenericCommand command) {
+    received.incrementAndGet();
+    Messages.GenericCommand reply = Messages.GenericCommand.newBuilder()
+        .setCmd(Messages.CommandType.ack)
+        .setPeerId(command.getPeerId())
+        .setI(command.getI())
+        .setAckMessage(Messages.AckCommand.newBuilder()
+            .setUid("standin_" + messageIds.incrementAndGet())
+            .setT(System.currentTimeMillis()))
+        .build();
+    conn.send(reply.toByteArray());
+  }
+
+  private void count(String type) {
+    AtomicLong counter = unhandled.get(type);
+    if (null == counter) {
+      unhandled.putIfAbsent(type, new AtomicLong());
+      counter = unhandled.get(type);
+    }
+    counter.incrementAndGet();
+  }
+
+  private boolean push(String peerId, Messages.GenericCommand command) {
+    WebSocket conn = sessions.get(peerId);
+    if (null == conn || !conn.isOpen()) {
+      return false;
+    }
+    conn.send(command.toByteArray());
+    return true;
+  }
+
+  /**
+   * push a text message from another member into conversationId.
+   *
+   * @return false if peerId has no open session.
+   */
+  public boolean pushMessage(String peerId, String conversationId, String fromPeerId, String text) {
+    Messages.GenericCommand command = Messages.GenericCommand.newBuilder()
+        .setCmd(Messages.CommandType.direct)
+        .setPeerId(peerId)
+        .setDirectMessage(Messages.DirectCommand.newBuilder()
+            .setCid(conversationId)
+            .setFromPeerId(fromPeerId)
+            .setId("standin_" + messageIds.incrementAndGet())
+            .setTimestamp(System.currentTimeMillis())
+            .setMsg("{\"_lctype\":-1,\"_lctext\":\"" + text + "\"}"))
+        .build();
+    boolean sent = push(peerId, command);
+    if (sent) {
+      pushed.incrementAndGet();
+    }
+    return sent;
+  }
+
+  public boolean pushMembersJoined(String peerId, String conversationId, List<String> members, String initBy) {
+    return push(peerId, membersCommand(Messages.OpType.members_joined, peerId, conversationId, members, initBy));
+  }
+
+  public boolean pushMembersLeft(String peerId, String conversationId, List<String> members, String initBy) {
+    return push(peerId, membersCommand(Messages.OpType.members_left, peerId, conversationId, members, initBy));
+  }
+
+  private static Messages.GenericCommand membersCommand(Messages.OpType op, String peerId, String conversationId,
+                                                        List<String> members, String initBy) {
+    return Messages.GenericCommand.newBuilder()
+        .setCmd(Messages.CommandType.conv)
+        .setOp(op)
+        .setPeerId(peerId)
+        .setConvMessage(Messages.ConvCommand.newBuilder()
+            .setCid(conversationId)
+            .addAllM(members)
+            .setInitBy(initBy))
+        .build();
+  }
+
+  /**
+   * drop the socket of peerId without a close frame.
+   *
+   * @return false if peerId has no open session.
+   */
+  public boolean disconnect(String peerId) {
+    WebSocket conn = sessions.remove(peerId);
+    if (null == conn) {
+      return false;
+    }
+    conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "forced by stand-in");
+    return true;
+  }
+
+  public boolean hasSession(String peerId) {
+    return sessions.containsKey(peerId);
+  }
+
+  public long getOpened() {
+    return opened.get();
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+
+  public long getPushed() {
+    return pushed.get();
+  }
+
+  public long getAcked() {
+    return acked.get();
+  }
+
+  public Map<String, AtomicLong> getUnhandled() {
+    return unhandled;
+  }
+}
@@ -0,0 +1,43 @@
+package cn.leancloud.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * IMEventNotification that keeps every event in order, for unit tests.
+ */
+public class RecordingNotification implements IMEventNotification {
+  public static class Event {
+    public final String method;
+    public final Object param;
+
+    Event(String method, Object param) {
+      this.method = method;
+      this.param = param;
+    }
+  }
+
+  public final List<Event> events = new ArrayList<>();
+
+  @Override
+  public synchronized void notify(String method, Object param) {
+    events.add(new Event(method, param));
+  }
+
+  @Override
+  public synchronized void notifyWithResult(String method, Object param, MethodChannel.Result callback) {
+    events.add(new Event(method, param));
+  }
+
+  public synchronized List<Event> of(String method) {
+    List<Event> result = new ArrayList<>();
+    for (Event event : events) {
+      if (event.method.equals(method)) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,131 @@
+package cn.leancloud.plugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.leancloud.im.v2.LCIMClient;
+import cn.leancloud.im.v2.LCIMClientOpenOption;
+import cn.leancloud.im.v2.LCIMConversation;
+import cn.leancloud.im.v2.LCIMMessage;
+import cn.leancloud.im.v2.LCIMMessageOption;
+import cn.leancloud.im.v2.callback.LCIMClientCallback;
+import cn.leancloud.im.v2.callback.LCIMConversationCallback;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * In-memory LCIMClient/LCIMConversation stand-ins, every request succeeds locally.
+ *
+ * Acknowledgements are delayed by ackDelay on the main looper, 0 acknowledges synchronously.
+ */
+public class SdkStandIns implements LeancloudPlugin.ClientProvider {
+  private final Map<String, LCIMClient> clients = new HashMap<>();
+  private final Map<String, LCIMConversation> conversations = new HashMap<>();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final int memberCount;
+  private final long ackDelay;
+  private long sequence = 0;
+
+  public SdkStandIns(int memberCount, long ackDelay) {
+    this.memberCount = memberCount;
+    this.ackDelay = ackDelay;
+  }
+
+  @Override
+  public synchronized LCIMClient getClient(final String clientId, String tag) {
+    LCIMClient client = clients.get(clientId);
+    if (null != client) {
+      return client;
+    }
+    final LCIMClient standIn = mock(LCIMClient.class);
+    when(standIn.getClientId()).thenReturn(clientId);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        final LCIMClientCallback callback = invocation.getArgument(1);
+        ack(new Runnable() {
+          @Override
+          public void run() {
+            callback.done(standIn, null);
+          }
+        });
+        return null;
+      }
+    }).when(standIn).open(nullable(LCIMClientOpenOption.class), any(LCIMClientCallback.class));
+    when(standIn.getConversation(anyString())).thenAnswer(new Answer<LCIMConversation>() {
+      @Override
+      public LCIMConversation answer(InvocationOnMock invocation) {
+        return getConversation(clientId, (String) invocation.getArgument(0));
+      }
+    });
+    clients.put(clientId, standIn);
+    return standIn;
+  }
+
+  public synchronized LCIMConversation getConversation(String clientId, String conversationId) {
+    String key = clientId + "/" + conversationId;
+    LCIMConversation conversation = conversations.get(key);
+    if (null != conversation) {
+      return conversation;
+    }
+    List<String> members = new ArrayList<>(memberCount);
+    members.add(clientId);
+    for (int i = 1; i < memberCount; i++) {
+      members.add("member_" + i);
+    }
+    Map<String, Object> rawData = new HashMap<>();
+    rawData.put("objectId", conversationId);
+    rawData.put("m", members);
+    rawData.put("c", clientId);
+    rawData.put("conv_type", 1);
+
+    conversation = mock(LCIMConversation.class);
+    when(conversation.getConversationId()).thenReturn(conversationId);
+    when(conversation.getMembers()).thenReturn(members);
+    when(conversation.dumpRawData()).thenReturn(rawData);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        LCIMMessage message = invocation.getArgument(0);
+        final LCIMConversationCallback callback = invocation.getArgument(2);
+        message.setMessageId("standin_" + nextSequence());
+        message.setTimestamp(System.currentTimeMillis());
+        ack(new Runnable() {
+          @Override
+          public void run() {
+            callback.done(null);
+          }
+        });
+        return null;
+      }
+    }).when(conversation).sendMessage(any(LCIMMessage.class), nullable(LCIMMessageOption.class),
+        any(LCIMConversationCallback.class));
+    conversations.put(key, conversation);
+    return conversation;
+  }
+
+  private synchronized long nextSequence() {
+    return ++sequence;
+  }
+
+  private void ack(Runnable runnable) {
+    if (ackDelay <= 0) {
+      runnable.run();
+    } else {
+      handler.postDelayed(runnable, ackDelay);
+    }
+  }
+}
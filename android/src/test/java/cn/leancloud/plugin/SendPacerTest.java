@@ -0,0 +1,210 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.leancloud.im.v2.LCIMException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SendPacerTest {
+  private static final int RATE_LIMITED = 4301;
+
+  /**
+   * a send which keeps its attempts, and its outcome once completed.
+   */
+  private static class RecordingSend implements SendPacer.Send, SendPacer.Attempt {
+    final List<SendPacer.Attempt> attempts = new ArrayList<>();
+    final List<Boolean> holds = new ArrayList<>();
+    int completions = 0;
+    LCIMException error;
+
+    @Override
+    public void send(SendPacer.Attempt attempt) {
+      attempts.add(attempt);
+    }
+
+    @Override
+    public void onHeld(boolean held) {
+      holds.add(held);
+    }
+
+    @Override
+    public void done(LCIMException e) {
+      completions++;
+      error = e;
+    }
+
+    boolean held() {
+      return !holds.isEmpty() && holds.get(holds.size() - 1);
+    }
+  }
+
+  private RecordingNotification listener;
+  private SendPacer pacer;
+
+  @Before
+  public void setUp() {
+    listener = new RecordingNotification();
+    pacer = new SendPacer(listener);
+  }
+
+  private RecordingSend submit(String conversationId) {
+    RecordingSend send = new RecordingSend();
+    pacer.submit("c", conversationId, send, send);
+    return send;
+  }
+
+  private static LCIMException error(int appCode) {
+    LCIMException e = mock(LCIMException.class);
+    when(e.getAppCode()).thenReturn(appCode);
+    return e;
+  }
+
+  @Test
+  public void disabledByDefault() {
+    assertFalse(pacer.isEnabled());
+    pacer.configure(1, 1, 0, 1, 0, null);
+    assertTrue(pacer.isEnabled());
+  }
+
+  @Test
+  public void sendsBeyondBurstWaitForTokensInOrder() {
+    pacer.configure(1, 1, 0, 1, 0, null);
+    RecordingSend first = submit("conv");
+    RecordingSend second = submit("conv");
+    RecordingSend third = submit("conv");
+    assertEquals(1, first.attempts.size());
+    assertFalse(first.held());
+    assertTrue(second.held());
+    assertTrue(third.held());
+
+    List<RecordingNotification.Event> queued = listener.of(Common.Method_Message_Send_Queued);
+    assertEquals(2, queued.size());
+    assertEquals(0, ((Map) queued.get(0).param).get(Common.Param_Queue_Position));
+    assertEquals(1, ((Map) queued.get(1).param).get(Common.Param_Queue_Position));
+
+    ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+    assertEquals(1, second.attempts.size());
+    assertFalse(second.held());
+    assertEquals(0, third.attempts.size());
+    ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+    assertEquals(1, third.attempts.size());
+  }
+
+  @Test
+  public void conversationsHaveTheirOwnBuckets() {
+    pacer.configure(1, 1, 0, 1, 0, null);
+    submit("conv");
+    RecordingSend other = submit("other");
+    assertEquals(1, other.attempts.size());
+  }
+
+  @Test
+  public void clientBucketIsSharedByConversations() {
+    pacer.configure(0, 1, 1, 1, 0, null);
+    submit("conv");
+    RecordingSend other = submit("other");
+    assertEquals(0, other.attempts.size());
+    ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+    assertEquals(1, other.attempts.size());
+  }
+
+  @Test
+  public void rateLimitedSendIsRetriedWithBackoffAndCompletedOnce() {
+    pacer.configure(100, 10, 0, 1, 2, Collections.singletonList(RATE_LIMITED));
+    RecordingSend send = submit("conv");
+    send.attempts.get(0).done(error(RATE_LIMITED));
+    assertEquals(0, send.completions);
+    assertTrue(send.held());
+
+    ShadowLooper.idleMainLooper(SendPacer.BACKOFF_BASE - 1, TimeUnit.MILLISECONDS);
+    assertEquals(1, send.attempts.size());
+    ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+    assertEquals(2, send.attempts.size());
+    assertFalse(send.held());
+
+    send.attempts.get(1).done(null);
+    assertEquals(1, send.completions);
+    assertNull(send.error);
+    assertEquals(Arrays.asList(false, true, false), send.holds);
+  }
+
+  @Test
+  public void retriedSendStaysAheadOfLaterSends() {
+    pacer.configure(100, 10, 0, 1, 1, Collections.singletonList(RATE_LIMITED));
+    RecordingSend first = submit("conv");
+    first.attempts.get(0).done(error(RATE_LIMITED));
+    RecordingSend second = submit("conv");
+    // the conversation is blocked by the backoff of the first send.
+    assertEquals(0, second.attempts.size());
+
+    ShadowLooper.idleMainLooper(SendPacer.BACKOFF_BASE, TimeUnit.MILLISECONDS);
+    assertEquals(2, first.attempts.size());
+    assertEquals(1, second.attempts.size());
+  }
+
+  @Test
+  public void retriesAreBoundedAndOtherErrorsFailAtOnce() {
+    pacer.configure(100, 10, 0, 1, 1, Collections.singletonList(RATE_LIMITED));
+    RecordingSend limited = submit("conv");
+    limited.attempts.get(0).done(error(RATE_LIMITED));
+    ShadowLooper.idleMainLooper(SendPacer.BACKOFF_BASE, TimeUnit.MILLISECONDS);
+    LCIMException e = error(RATE_LIMITED);
+    limited.attempts.get(1).done(e);
+    assertEquals(1, limited.completions);
+    assertEquals(e, limited.error);
+
+    RecordingSend failed = submit("other");
+    failed.attempts.get(0).done(error(1));
+    assertEquals(1, failed.completions);
+    assertEquals(1, failed.attempts.size());
+  }
+
+  @Test
+  public void disablingRunsQueuedSends() {
+    pacer.configure(1, 1, 0, 1, 0, null);
+    submit("conv");
+    RecordingSend queued = submit("conv");
+    pacer.configure(0, 1, 0, 1, 0, null);
+    ShadowLooper.idleMainLooper();
+    assertEquals(1, queued.attempts.size());
+  }
+
+  @Test
+  public void conversationBurstRunsSendsAtOnce() {
+    pacer.configure(1, 3, 0, 1, 0, null);
+    assertTrue(pacer.hasConversationBurst());
+    RecordingSend first = submit("conv");
+    RecordingSend second = submit("conv");
+    RecordingSend third = submit("conv");
+    RecordingSend fourth = submit("conv");
+    assertEquals(1, first.attempts.size());
+    assertEquals(1, second.attempts.size());
+    assertEquals(1, third.attempts.size());
+    assertEquals(0, fourth.attempts.size());
+
+    pacer.configure(1, 1, 10, 5, 0, null);
+    assertFalse(pacer.hasConversationBurst());
+  }
+}
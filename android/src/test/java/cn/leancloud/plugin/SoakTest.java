@@ -0,0 +1,216 @@
+package cn.leancloud.plugin;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.leancloud.im.DirectlyOperationTube;
+import cn.leancloud.im.InternalConfiguration;
+import cn.leancloud.im.LCIMOptions;
+import cn.leancloud.im.v2.messages.LCIMTextMessage;
+import cn.leancloud.json.JSON;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodCodec;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Soak test against RealtimeStandIn: unlike LoadTest the real SDK runs underneath, it opens a
+ * websocket to the stand-in on 127.0.0.1 and everything between the plugin and the socket
+ * (protobuf commands, acks, reconnects, session reopen) is the SDK's own code.
+ *
+ *   ./gradlew testDebugUnitTest --tests cn.leancloud.plugin.SoakTest -Psoak=true \
+ *       -Psoak.duration=1800 -Psoak.messageRate=3000 -Psoak.disconnect=60
+ *
+ * Properties (default):
+ *   soak.duration      seconds (60)
+ *   soak.callRate      sendMessage calls per second (100)
+ *   soak.messageRate   messages pushed by the stand-in per second (1000)
+ *   soak.churnRate     members joined/left events per second (20)
+ *   soak.disconnect    seconds between forced disconnects, 0 disables them (30)
+ *   soak.conversations conversations traffic is spread over (20)
+ *
+ * Reports stand-in counters (sessions opened, messages received, pushed and acknowledged,
+ * unanswered commands), messages sent to Dart, used heap every 10 seconds and the
+ * PluginMetrics snapshot on stdout. Used heap after GC should stay flat once buffers are warm.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SoakTest {
+  private static final String CHANNEL = "leancloud_plugin";
+  private static final String CLIENT_ID = "soak_client";
+  private static final long TICK_MILLIS = 10;
+  private static final long HEAP_SAMPLE_MILLIS = 10000;
+
+  private final MethodCodec codec = new StandardMethodCodec(new LeanCloudMessageCodec());
+  private RealtimeStandIn server = null;
+  private LeancloudPlugin plugin = null;
+  private long replies = 0;
+
+  private static int property(String key, int defaultValue) {
+    return Integer.parseInt(System.getProperty("soak." + key, String.valueOf(defaultValue)));
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private void call(FakeBinaryMessenger messenger, String method, Map<String, Object> args) {
+    ByteBuffer message = codec.encodeMethodCall(new MethodCall(method, args));
+    message.flip();
+    messenger.receive(CHANNEL, message, new BinaryMessenger.BinaryReply() {
+      @Override
+      public void reply(ByteBuffer reply) {
+        replies++;
+      }
+    });
+  }
+
+  private Map<String, Object> sendMessageArgs(String conversationId, long sequence) {
+    LCIMTextMessage message = new LCIMTextMessage();
+    message.setText("soak call " + sequence);
+    Map<String, Object> args = new HashMap<>();
+    args.put(Common.Param_Client_Id, CLIENT_ID);
+    args.put(Common.Param_Conv_Id, conversationId);
+    args.put(Common.Param_Message_Raw, Common.wrapMessage(message));
+    return args;
+  }
+
+  private void idle(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    ShadowLooper.idleMainLooper(millis, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void run() throws InterruptedException {
+    Assume.assumeTrue(Boolean.parseBoolean(System.getProperty("soak", "false")));
+    int duration = property("duration", 60);
+    int callRate = property("callRate", 100);
+    int messageRate = property("messageRate", 1000);
+    int churnRate = property("churnRate", 20);
+    long disconnectMillis = property("disconnect", 30) * 1000L;
+    int conversationCount = property("conversations", 20);
+    String[] conversationIds = new String[conversationCount];
+    for (int i = 0; i < conversationCount; i++) {
+      conversationIds[i] = "soak_conversation_" + i;
+    }
+
+    server = new RealtimeStandIn(0);
+    String rtmServer = server.startAndWait();
+    cn.leancloud.core.LeanCloud.initialize("soak_app_id", "soak_app_key", "http://127.0.0.1");
+    InternalConfiguration.setOperationTube(new DirectlyOperationTube(false));
+    LCIMOptions.getGlobalOptions().setRtmServer(rtmServer);
+
+    FakeBinaryMessenger messenger = new FakeBinaryMessenger();
+    plugin = new LeancloudPlugin();
+    plugin.attach(messenger);
+
+    Map<String, Object> openArgs = new HashMap<>();
+    openArgs.put(Common.Param_Client_Id, CLIENT_ID);
+    call(messenger, Common.Method_Open_Client, openArgs);
+    for (int waited = 0; !server.hasSession(CLIENT_ID); waited += TICK_MILLIS) {
+      if (waited > 10000) {
+        throw new IllegalStateException("client didn't open a session on " + rtmServer);
+      }
+      idle(TICK_MILLIS);
+    }
+
+    long calls = 0;
+    long messages = 0;
+    long churn = 0;
+    long missed = 0;
+    long disconnects = 0;
+    long startHeap = usedHeap();
+    long startCount = messenger.getSentCount();
+    StringBuilder heapSamples = new StringBuilder();
+    long nextHeapSample = HEAP_SAMPLE_MILLIS;
+    long start = System.nanoTime();
+    long elapsed = 0;
+    while (elapsed < duration * 1000L) {
+      for (long due = messageRate * elapsed / 1000; messages < due; messages++) {
+        if (!server.pushMessage(CLIENT_ID, conversationIds[(int) (messages % conversationCount)],
+            "member_" + (messages % 7), "soak message " + messages)) {
+          missed++;
+        }
+      }
+      for (long due = churnRate * elapsed / 1000; churn < due; churn++) {
+        String conversationId = conversationIds[(int) ((churn / 2) % conversationCount)];
+        String member = "churn_" + (churn / 2);
+        boolean sent = 0 == churn % 2
+            ? server.pushMembersJoined(CLIENT_ID, conversationId, Arrays.asList(member), "member_1")
+            : server.pushMembersLeft(CLIENT_ID, conversationId, Arrays.asList(member), "member_1");
+        if (!sent) {
+          missed++;
+        }
+      }
+      for (long due = callRate * elapsed / 1000; calls < due; calls++) {
+        call(messenger, Common.Method_Send_Message,
+            sendMessageArgs(conversationIds[(int) (calls % conversationCount)], calls));
+      }
+      if (disconnectMillis > 0 && elapsed >= (disconnects + 1) * disconnectMillis) {
+        server.disconnect(CLIENT_ID);
+        disconnects++;
+      }
+      if (elapsed >= nextHeapSample) {
+        heapSamples.append(' ').append(usedHeap() / 1024 / 1024).append("MB");
+        nextHeapSample += HEAP_SAMPLE_MILLIS;
+      }
+      ShadowLooper.idleMainLooper(TICK_MILLIS, TimeUnit.MILLISECONDS);
+      long next = elapsed + TICK_MILLIS;
+      elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      if (elapsed < next) {
+        Thread.sleep(next - elapsed);
+        elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      }
+    }
+    idle(1000);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.println("=== LeancloudPlugin soak test, " + String.format("%.1f", seconds) + "s");
+    System.out.println(String.format("calls:     %d sent, %d replied, %d received by stand-in",
+        calls, replies, server.getReceived()));
+    System.out.println(String.format("pushed:    %d messages (%.0f/s), %d acknowledged, %d churn events, %d missed while disconnected",
+        server.getPushed(), server.getPushed() / seconds, server.getAcked(), churn, missed));
+    System.out.println(String.format("sessions:  %d opened, %d forced disconnects", server.getOpened(), disconnects));
+    System.out.println("unhandled: " + server.getUnhandled());
+    System.out.println(String.format("to dart:   %d messages, %.0f/s",
+        messenger.getSentCount() - startCount, (messenger.getSentCount() - startCount) / seconds));
+    System.out.println(String.format("heap:      %dMB at start, every %ds:%s, %dMB at end",
+        startHeap / 1024 / 1024, HEAP_SAMPLE_MILLIS / 1000, heapSamples, usedHeap() / 1024 / 1024));
+    System.out.println("metrics:   " + JSON.toJSONString(LeancloudPlugin.getMetrics().snapshot()));
+    System.out.println("dispatch:  " + JSON.toJSONString(LeancloudPlugin.getEventDispatcher().getStats()));
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (null != plugin) {
+      plugin.onDetachedFromEngine(mock(FlutterPlugin.FlutterPluginBinding.class));
+      plugin = null;
+    }
+    if (null != server) {
+      server.stop(1000);
+      server = null;
+    }
+  }
+}
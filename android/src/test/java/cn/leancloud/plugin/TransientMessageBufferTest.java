@@ -0,0 +1,137 @@
+package cn.leancloud.plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class TransientMessageBufferTest {
+  private RecordingNotification listener;
+  private TransientMessageBuffer buffer;
+
+  @Before
+  public void setUp() {
+    listener = new RecordingNotification();
+    buffer = new TransientMessageBuffer(listener);
+  }
+
+  private static Map<String, Object> message(int index) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("index", index);
+    return data;
+  }
+
+  private static Map<String, Object> paramOf(RecordingNotification.Event event) {
+    return (Map<String, Object>) event.param;
+  }
+
+  private static int indexAt(RecordingNotification.Event event, int position) {
+    List<Map<String, Object>> messages = (List<Map<String, Object>>) paramOf(event).get(Common.Param_Messages);
+    return (Integer) messages.get(position).get("index");
+  }
+
+  @Test
+  public void disabledBufferRejectsOffer() {
+    assertFalse(buffer.offer("c", "conv", "a", message(0)));
+    assertTrue(listener.events.isEmpty());
+  }
+
+  @Test
+  public void flushesInArrivalOrderAndRemovesEmptyQueues() {
+    buffer.configure(true, 10, null, 0, 50, 0);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(buffer.offer("c", "conv", "a", message(i)));
+    }
+    assertTrue(listener.events.isEmpty());
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+
+    List<RecordingNotification.Event> batches = listener.of(Common.Method_Message_Batch_Received);
+    assertEquals(1, batches.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, indexAt(batches.get(0), i));
+    }
+    assertEquals(0, buffer.queueCount());
+  }
+
+  @Test
+  public void dropOldestCountsDropsAndKeepsTotalAcrossFlushes() {
+    buffer.configure(true, 2, Common.Inbound_Policy_Drop_Oldest, 0, 50, 0);
+    for (int i = 0; i < 4; i++) {
+      buffer.offer("c", "conv", "a", message(i));
+    }
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+    for (int i = 4; i < 7; i++) {
+      buffer.offer("c", "conv", "a", message(i));
+    }
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+
+    List<RecordingNotification.Event> batches = listener.of(Common.Method_Message_Batch_Received);
+    assertEquals(2, batches.size());
+    assertEquals(2, indexAt(batches.get(0), 0));
+    assertEquals(2L, paramOf(batches.get(0)).get(Common.Param_Dropped));
+    assertEquals(2L, paramOf(batches.get(0)).get(Common.Param_Dropped_Total));
+    assertEquals(5, indexAt(batches.get(1), 0));
+    assertEquals(1L, paramOf(batches.get(1)).get(Common.Param_Dropped));
+    assertEquals(3L, paramOf(batches.get(1)).get(Common.Param_Dropped_Total));
+  }
+
+  @Test
+  public void latestPerSenderReplacesMessageOfSameSender() {
+    buffer.configure(true, 2, Common.Inbound_Policy_Latest_Per_Sender, 0, 50, 0);
+    buffer.offer("c", "conv", "a", message(0));
+    buffer.offer("c", "conv", "b", message(1));
+    buffer.offer("c", "conv", "a", message(2));
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+
+    RecordingNotification.Event batch = listener.of(Common.Method_Message_Batch_Received).get(0);
+    assertEquals(1, indexAt(batch, 0));
+    assertEquals(2, indexAt(batch, 1));
+  }
+
+  @Test
+  public void batchSizeSplitsBacklogOverFlushes() {
+    buffer.configure(true, 10, null, 0, 50, 2);
+    for (int i = 0; i < 5; i++) {
+      buffer.offer("c", "conv", "a", message(i));
+    }
+    ShadowLooper.idleMainLooper(50, TimeUnit.MILLISECONDS);
+    assertEquals(1, listener.of(Common.Method_Message_Batch_Received).size());
+    assertEquals(1, buffer.queueCount());
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+
+    List<RecordingNotification.Event> batches = listener.of(Common.Method_Message_Batch_Received);
+    assertEquals(3, batches.size());
+    assertEquals(4, indexAt(batches.get(2), 0));
+    assertEquals(0, buffer.queueCount());
+  }
+
+  @Test
+  public void disablingFlushesAtOnceBeforeLaterMessages() {
+    buffer.configure(true, 10, null, 0, 50, 0);
+    buffer.offer("c", "conv", "a", message(0));
+    buffer.offer("c", "conv", "a", message(1));
+    buffer.configure(false, 0, null, 0, 0, 0);
+
+    // the backlog is out before configure returns, the next message goes directly.
+    assertEquals(1, listener.events.size());
+    assertFalse(buffer.offer("c", "conv", "a", message(2)));
+    assertEquals(0, buffer.queueCount());
+    ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+    assertEquals(1, listener.events.size());
+  }
+}
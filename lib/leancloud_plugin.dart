@@ -8,4 +8,5 @@ import 'package:intl/intl.dart';
 part 'src/client.dart';
 part 'src/conversation.dart';
 part 'src/message.dart';
+part 'src/plugin.dart';
 part 'src/query.dart';
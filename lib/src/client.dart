@@ -12,89 +12,142 @@ class _Bridge with _Utilities {
 
   _Bridge._internal() {
     channel.setMethodCallHandler((call) async {
-      final Map args = call.arguments;
-      final Client? client = clientMap[args['clientId']!];
-      if (client == null) {
-        return {};
+      return await _handle(
+        method: call.method,
+        args: call.arguments,
+      );
+    });
+  }
+
+  Future<dynamic> _handle({
+    required String method,
+    required Map args,
+  }) async {
+    if (method == 'onMetricsSnapshot') {
+      if (RTMPlugin.onMetricsSnapshot != null) {
+        RTMPlugin.onMetricsSnapshot!(
+          metrics: args,
+        );
       }
-      switch (call.method) {
-        case 'onSessionOpen':
-          if (client.onOpened != null) {
-            client.onOpened!(
-              client: client,
-            );
-          }
-          break;
-        case 'onSessionResume':
-          if (client.onResuming != null) {
-            client.onResuming!(
-              client: client,
-            );
-          }
-          break;
-        case 'onSessionDisconnect':
-          if (client.onDisconnected != null) {
-            RTMException? e;
-            if (isFailure(args)) {
-              e = errorFrom(args);
-            }
-            client.onDisconnected!(
-              client: client,
-              exception: e,
-            );
-          }
-          break;
-        case 'onSessionClose':
-          if (client.onClosed != null) {
-            client.onClosed!(
-              client: client,
-              exception: errorFrom(args),
-            );
+      return {};
+    }
+    final Client? client = clientMap[args['clientId']];
+    if (client == null) {
+      return {};
+    }
+    switch (method) {
+      case 'onSessionOpen':
+        if (client.onOpened != null) {
+          client.onOpened!(
+            client: client,
+          );
+        }
+        break;
+      case 'onSessionResume':
+        if (client.onResuming != null) {
+          client.onResuming!(
+            client: client,
+          );
+        }
+        break;
+      case 'onSessionDisconnect':
+        if (client.onDisconnected != null) {
+          RTMException? e;
+          if (isFailure(args)) {
+            e = errorFrom(args);
           }
-          break;
-        case 'onConversationMembersUpdate':
-        case 'onConversationDataUpdate':
-        case 'onUnreadMessageCountUpdate':
-        case 'onLastReceiptTimestampUpdate':
-        case 'onMessageReceive':
-        case 'onMessagePatch':
-        case 'onMessageReceipt':
-          client._processConversationEvent(
-            method: call.method,
-            args: args,
+          client.onDisconnected!(
+            client: client,
+            exception: e,
           );
-          break;
-        case 'onSignSessionOpen':
-          if (client._openSignatureHandler != null) {
-            final Signature sign = await client._openSignatureHandler!(
+        }
+        break;
+      case 'onSessionClose':
+        if (client.onClosed != null) {
+          client.onClosed!(
+            client: client,
+            exception: errorFrom(args),
+          );
+        }
+        break;
+      case 'onSessionStateChange':
+        if (client.onSessionStateChanged != null) {
+          final List<String> states = ['online', 'paused', 'offline'];
+          final int index = states.indexOf(args['state']);
+          if (index >= 0) {
+            client.onSessionStateChanged!(
               client: client,
+              state: SessionState.values[index],
+              pauseCount: args['pauseCount'],
+              pausedMillis: args['pausedMillis'],
+              code: args['code'],
             );
-            return {'sign': sign._toMap()};
           }
-          break;
-        case 'onSignConversation':
-          if (client._conversationSignatureHandler != null) {
-            Conversation? conversation;
-            final String? conversationID = args['conversationId'];
-            if (conversationID != null) {
-              conversation = await client._getConversation(
-                conversationID: conversationID,
-              );
-            }
-            final Signature sign = await client._conversationSignatureHandler!(
-              client: client,
-              conversation: conversation,
-              targetIDs: args['targetIds'],
-              action: args['action'],
+        }
+        break;
+      case 'onConversationMembersUpdate':
+      case 'onConversationDataUpdate':
+      case 'onUnreadMessageCountUpdate':
+      case 'onLastReceiptTimestampUpdate':
+      case 'onMessageReceive':
+      case 'onMessageBatchReceive':
+      case 'onMessagePatch':
+      case 'onMessageReceipt':
+      case 'onMessageSendQueue':
+        client._processConversationEvent(
+          method: method,
+          args: args,
+        );
+        break;
+      case 'onConversationQueryRefresh':
+        final List<Conversation> conversations =
+            client.conversationQuery()._handleResults(args['conversations'] ?? [], true);
+        if (client.onConversationsRefreshed != null) {
+          client.onConversationsRefreshed!(
+            client: client,
+            conversations: conversations,
+          );
+        }
+        break;
+      case 'onSignSessionOpen':
+        if (client._openSignatureHandler != null) {
+          final Signature sign = await client._openSignatureHandler!(
+            client: client,
+          );
+          return {'sign': sign._toMap()};
+        }
+        break;
+      case 'onSignConversation':
+        if (client._conversationSignatureHandler != null) {
+          Conversation? conversation;
+          final String? conversationID = args['conversationId'];
+          if (conversationID != null) {
+            conversation = await client._getConversation(
+              conversationID: conversationID,
             );
-            return {'sign': sign._toMap()};
           }
-          break;
-        default:
-          break;
-      }
-      return {};
-    });
+          final Signature sign = await client._conversationSignatureHandler!(
+            client: client,
+            conversation: conversation,
+            targetIDs: args['targetIds'],
+            action: args['action'],
+          );
+          return {'sign': sign._toMap()};
+        }
+        break;
+      case 'onEventReplay':
+        final List events = args['events'] ?? [];
+        for (final Map event in events) {
+          await _handle(
+            method: event['method'],
+            args: event['args'],
+          );
+        }
+        break;
+      default:
+        break;
+    }
+    return {};
   }
 }
 
@@ -203,6 +256,18 @@ class Signature {
       };
 }
 
+/// The connection state of a [Client], see [Client.onSessionStateChanged].
+enum SessionState {
+  /// connected.
+  online,
+
+  /// disconnected for a while, it will resume by itself.
+  paused,
+
+  /// closed by server, e.g. logged in on another device.
+  offline,
+}
+
 /// IM Client of RTM Plugin.
 class Client with _Utilities {
   /// The ID of the [Client], it should not be `null`.
@@ -240,6 +305,19 @@ class Client with _Utilities {
     required RTMException exception,
   })? onClosed;
 
+  /// The connection [state] of the [client] has changed, only available on Android.
+  ///
+  /// [pauseCount] means how many times the connection has paused.
+  /// [pausedMillis] means how long the pause lasted, only for [SessionState.online].
+  /// [code] means why the [client] went offline, only for [SessionState.offline].
+  void Function({
+    required Client client,
+    required SessionState state,
+    int? pauseCount,
+    int? pausedMillis,
+    int? code,
+  })? onSessionStateChanged;
+
   /// The [client] has been invited to the [conversation].
   ///
   /// [byClientID] means who did it.
@@ -460,6 +538,34 @@ class Client with _Utilities {
     DateTime? atDate,
   })? onMessageRead;
 
+  /// Some [Message]s of the [conversation] have been dropped by the inbound buffer, only available on Android.
+  ///
+  /// [dropped] means how many were dropped since the last batch.
+  /// [droppedTotal] means how many were dropped since the buffer was set up.
+  void Function({
+    required Client client,
+    required Conversation conversation,
+    required int dropped,
+    required int droppedTotal,
+  })? onMessagesDropped;
+
+  /// A message sending to [conversation] has been queued by send pacing, only available on Android.
+  ///
+  /// [position] means how many queued messages of the client are ahead of it.
+  void Function({
+    required Client client,
+    required Conversation conversation,
+    int? position,
+  })? onMessageSendQueued;
+
+  /// A cached result of [ConversationQuery.find] has been refreshed in background, only available on Android.
+  ///
+  /// The [conversations] already hold the refreshed data, see [RTMPlugin.setQueryCache].
+  void Function({
+    required Client client,
+    required List<Conversation> conversations,
+  })? onConversationsRefreshed;
+
   final Future<Signature> Function({
     required Client client,
   })? _openSignatureHandler;
@@ -532,6 +638,24 @@ class Client with _Utilities {
     _Bridge().clientMap.remove(id);
   }
 
+  /// To read [Conversation.lastMessage] in every conversation of [conversationIDs], only available on Android.
+  ///
+  /// The unread count of each conversation is cleared at once, the read acks are sent together, see [RTMPlugin.setReadDebounce].
+  Future<void> readConversations({
+    required Set<String> conversationIDs,
+  }) async {
+    if (conversationIDs.isEmpty) {
+      return;
+    }
+    await call(
+      method: 'readConversations',
+      arguments: {
+        'clientId': id,
+        'conversationIds': conversationIDs.toList(),
+      },
+    );
+  }
+
   /// To create a normal [Conversation].
   ///
   /// [isUnique] is a special parameter, default is `true`, it affects the creation behavior and property [Conversation.isUnique].
@@ -628,6 +752,7 @@ class Client with _Utilities {
       method: 'createConversation',
       arguments: args,
     );
+    final int? snapshotVersion = rawData.remove('version');
     final String conversationID = rawData['objectId'];
     Conversation? conversation = conversationMap[conversationID];
     if (conversation != null) {
@@ -639,6 +764,7 @@ class Client with _Utilities {
       );
       conversationMap[conversationID] = conversation;
     }
+    conversation._snapshotVersion = snapshotVersion;
     return conversation as T;
   }
 
@@ -657,6 +783,7 @@ class Client with _Utilities {
       method: 'getConversation',
       arguments: args,
     );
+    final int? snapshotVersion = rawData.remove('version');
     Conversation? conversation = conversationMap[conversationID];
     if (conversation != null) {
       conversation._rawData = rawData;
@@ -667,6 +794,7 @@ class Client with _Utilities {
       );
       conversationMap[conversationID] = conversation;
     }
+    conversation._snapshotVersion = snapshotVersion;
     return conversation;
   }
 
@@ -682,7 +810,7 @@ class Client with _Utilities {
         conversation._membersUpdate(args);
         break;
       case 'onConversationDataUpdate':
-        conversation._dataUpdate(args);
+        await conversation._dataUpdate(args);
         break;
       case 'onUnreadMessageCountUpdate':
         conversation._unreadMessageCountUpdate(args);
@@ -693,12 +821,18 @@ class Client with _Utilities {
       case 'onMessageReceive':
         conversation._messageReceive(args);
         break;
+      case 'onMessageBatchReceive':
+        conversation._messageBatchReceive(args);
+        break;
       case 'onMessagePatch':
         conversation._messagePatch(args);
         break;
       case 'onMessageReceipt':
         conversation._messageReceipt(args);
         break;
+      case 'onMessageSendQueue':
+        conversation._messageSendQueue(args);
+        break;
       default:
         break;
     }
@@ -145,6 +145,7 @@ class Conversation with _Utilities {
 
   _ConversationType _type;
   Map _rawData = {};
+  int? _snapshotVersion;
   Message? _lastMessage;
   int? _lastDeliveredTimestamp;
   int? _lastReadTimestamp;
@@ -262,6 +263,7 @@ class Conversation with _Utilities {
       'clientId': client.id,
       'conversationId': id,
       'message': message._toMap(),
+      'callTime': DateTime.now().millisecondsSinceEpoch,
     };
     if (options.isNotEmpty) {
       args['options'] = options;
@@ -382,15 +384,26 @@ class Conversation with _Utilities {
   /// To fetch last receipt timestamps of the [Message].
   ///
   /// After invoked this method, [Client.onLastDeliveredAtUpdated] and [Client.onLastReadAtUpdated] may will be invoked if the cached timestamp has been updated.
-  Future<void> fetchReceiptTimestamps() async {
+  ///
+  /// On Android the timestamps are cached and kept current by receipt events, set [forceRefresh] with `true` to query the server, default is `false`.
+  Future<void> fetchReceiptTimestamps({
+    bool forceRefresh = false,
+  }) async {
     var args = {
       'clientId': client.id,
       'conversationId': id,
+      'forceRefresh': forceRefresh,
     };
-    return await call(
+    final dynamic result = await call(
       method: 'fetchReceiptTimestamp',
       arguments: args,
     );
+    if (result is Map) {
+      _lastReceiptTimestampUpdate({
+        'maxReadTimestamp': result['maxReadTimestamp'],
+        'maxAckTimestamp': result['maxDeliveredTimestamp'],
+      });
+    }
   }
 
   /// To query the history of the [Message] which has been sent.
@@ -656,6 +669,62 @@ class Conversation with _Utilities {
     return QueryMemberResult._from(result);
   }
 
+  /// Export all blocked members in the conversation, only available on Android.
+  ///
+  /// Pages of [pageSize] members are emitted until the list ends, the next page is fetched natively while the current one is delivered. [pageSize]'s default is `100`, should not more than `100`.
+  ///
+  /// Cancel the subscription to stop the export.
+  Stream<List<String>> exportBlockedMembers({
+    int pageSize = 100,
+  }) {
+    return _exportMembers(
+      kind: 'blocked',
+      pageSize: pageSize,
+    );
+  }
+
+  /// Export all muted members in the conversation, only available on Android.
+  ///
+  /// Pages of [pageSize] members are emitted until the list ends, the next page is fetched natively while the current one is delivered. [pageSize]'s default is `100`, should not more than `100`.
+  ///
+  /// Cancel the subscription to stop the export.
+  Stream<List<String>> exportMutedMembers({
+    int pageSize = 100,
+  }) {
+    return _exportMembers(
+      kind: 'muted',
+      pageSize: pageSize,
+    );
+  }
+
+  Stream<List<String>> _exportMembers({
+    required String kind,
+    required int pageSize,
+  }) async* {
+    if (pageSize < 1 || pageSize > 100) {
+      throw ArgumentError(
+        'pageSize should in [1...100].',
+      );
+    }
+    final Map result = await call(
+      method: 'exportMembers',
+      arguments: {
+        'clientId': client.id,
+        'conversationId': id,
+        'kind': kind,
+        'limit': pageSize,
+      },
+    );
+    final EventChannel channel = EventChannel(result['channel']);
+    await for (final page in channel.receiveBroadcastStream()) {
+      final Map event = page;
+      if (isFailure(event)) {
+        throw errorFrom(event);
+      }
+      yield List<String>.from(event['success']['client_ids'] ?? []);
+    }
+  }
+
   /// To turn off the offline notifications for [Conversation.client] about this [Conversation].
   ///
   /// If success, [Conversation.isMuted] will be `true`.
@@ -673,8 +742,11 @@ class Conversation with _Utilities {
   /// To update attributes of the [Conversation].
   ///
   /// [attributes] should not be empty.
+  /// If [patchOnly] is `true`, only the updated keys are sent back and applied to [Conversation.rawData] instead of the whole [Conversation], only available on Android.
+  /// Updates with operations resolved by server, e.g. `{'__op': 'Increment', 'amount': 1}`, always get the whole [Conversation].
   Future<void> updateInfo({
     required Map<String, dynamic> attributes,
+    bool patchOnly = false,
   }) async {
     if (attributes.isEmpty) {
       throw ArgumentError(
@@ -685,18 +757,147 @@ class Conversation with _Utilities {
       'clientId': client.id,
       'conversationId': id,
       'data': attributes,
+      'patchOnly': patchOnly,
     };
-    _rawData = await call(
+    final Map result = await call(
       method: 'updateData',
       arguments: args,
     );
+    if (result['patch'] == true) {
+      _applyPatch(result);
+    } else {
+      _snapshotVersion = result.remove('version');
+      _rawData = result;
+    }
+  }
+
+  void _applyPatch(
+    Map patch,
+  ) {
+    final Map set = patch['set'] ?? {};
+    set.forEach((key, value) {
+      final List<String> path = key.split('.');
+      final Map? parent = _patchParent(path);
+      parent?[path.last] = value;
+    });
+    final List unset = patch['unset'] ?? [];
+    for (final String key in unset) {
+      final List<String> path = key.split('.');
+      final Map? parent = _patchParent(path, create: false);
+      parent?.remove(path.last);
+    }
+    _rawData['updatedAt'] = patch['udate'];
+  }
+
+  Map? _patchParent(
+    List<String> path, {
+    bool create = true,
+  }) {
+    Map parent = _rawData;
+    for (final String key in path.sublist(0, path.length - 1)) {
+      var child = parent[key];
+      if (child is! Map) {
+        if (!create) {
+          return null;
+        }
+        child = {};
+        parent[key] = child;
+      }
+      parent = child;
+    }
+    return parent;
+  }
+
+  /// To check whether [members] are muted in the conversation, only available on Android.
+  ///
+  /// The muted member list is loaded once in background and then kept current by events, so later checks don't hit the server.
+  ///
+  /// Returns whether each of [members] is muted.
+  Future<Map<String, bool>> checkMutedMembers({
+    required List<String> members,
+  }) async {
+    return await _checkModeration(
+      kind: 'muted',
+      members: members,
+    );
+  }
+
+  /// To check whether [members] are blocked in the conversation, only available on Android.
+  ///
+  /// The blocked member list is loaded once in background and then kept current by events, so later checks don't hit the server.
+  ///
+  /// Returns whether each of [members] is blocked.
+  Future<Map<String, bool>> checkBlockedMembers({
+    required List<String> members,
+  }) async {
+    return await _checkModeration(
+      kind: 'blocked',
+      members: members,
+    );
+  }
+
+  /// To count the muted members of the conversation, only available on Android.
+  ///
+  /// Uses the same member list as [Conversation.checkMutedMembers], loading it first if needed.
+  Future<int> countMutedMembers() async {
+    final Map result = await _moderationState(
+      kind: 'muted',
+      members: [],
+    );
+    return result['count'] ?? 0;
+  }
+
+  /// To count the blocked members of the conversation, only available on Android.
+  ///
+  /// Uses the same member list as [Conversation.checkBlockedMembers], loading it first if needed.
+  Future<int> countBlockedMembers() async {
+    final Map result = await _moderationState(
+      kind: 'blocked',
+      members: [],
+    );
+    return result['count'] ?? 0;
+  }
+
+  Future<Map<String, bool>> _checkModeration({
+    required String kind,
+    required List<String> members,
+  }) async {
+    final Map result = await _moderationState(
+      kind: kind,
+      members: members,
+    );
+    final Map states = result['members'] ?? {};
+    return states.map(
+      (key, value) => MapEntry(key as String, value == true),
+    );
+  }
+
+  Future<Map> _moderationState({
+    required String kind,
+    required List<String> members,
+  }) async {
+    return await call(
+      method: 'checkModeration',
+      arguments: {
+        'clientId': client.id,
+        'conversationId': id,
+        'kind': kind,
+        'members': members,
+        'wait': true,
+      },
+    );
   }
 
   /// To get the count of the [Conversation.members].
-  Future<int> countMembers() async {
+  ///
+  /// On Android the count is cached and kept current by membership events, set [forceRefresh] with `true` to query the server, default is `false`.
+  Future<int> countMembers({
+    bool forceRefresh = false,
+  }) async {
     var args = {
       'clientId': client.id,
       'conversationId': id,
+      'forceRefresh': forceRefresh,
     };
     return await call(
       method: 'countMembers',
@@ -1009,12 +1210,25 @@ class Conversation with _Utilities {
     }
   }
 
-  void _dataUpdate(
+  Future<void> _dataUpdate(
     Map args,
-  ) {
+  ) async {
     final Map? rawData = args['rawData'];
+    final Map? delta = args['delta'];
     if (rawData != null) {
       _rawData = rawData;
+      _snapshotVersion = args['version'];
+    } else if (delta != null) {
+      if (delta['base'] == _snapshotVersion) {
+        _applyDelta(delta);
+      } else {
+        try {
+          await _fetchSnapshot();
+        } catch (e) {
+          // keep the current data, the next delta will try again.
+          _snapshotVersion = null;
+        }
+      }
     }
     if (client.onInfoUpdated != null) {
       client.onInfoUpdated!(
@@ -1028,6 +1242,42 @@ class Conversation with _Utilities {
     }
   }
 
+  void _applyDelta(
+    Map delta,
+  ) {
+    final Map set = delta['set'] ?? {};
+    set.forEach((key, value) {
+      final Map? attr = _rawData['attr'];
+      if (key == 'attr' && value is Map && attr != null) {
+        attr.addAll(value);
+      } else {
+        _rawData[key] = value;
+      }
+    });
+    final List unset = delta['unset'] ?? [];
+    for (final String key in unset) {
+      if (key.startsWith('attr.')) {
+        final Map? attr = _rawData['attr'];
+        attr?.remove(key.substring('attr.'.length));
+      } else {
+        _rawData.remove(key);
+      }
+    }
+    _snapshotVersion = delta['version'];
+  }
+
+  Future<void> _fetchSnapshot() async {
+    final Map result = await call(
+      method: 'getConversationSnapshot',
+      arguments: {
+        'clientId': client.id,
+        'conversationId': id,
+      },
+    );
+    _rawData = result['rawData'];
+    _snapshotVersion = result['version'];
+  }
+
   void _unreadMessageCountUpdate(
     Map args,
   ) {
@@ -1104,6 +1354,24 @@ class Conversation with _Utilities {
     }
   }
 
+  void _messageBatchReceive(
+    Map args,
+  ) {
+    final List messages = args['messages'] ?? [];
+    for (final Map rawData in messages) {
+      _messageReceive({'message': rawData});
+    }
+    final int dropped = args['dropped'] ?? 0;
+    if (dropped > 0 && client.onMessagesDropped != null) {
+      client.onMessagesDropped!(
+        client: client,
+        conversation: this,
+        dropped: dropped,
+        droppedTotal: args['droppedTotal'] ?? dropped,
+      );
+    }
+  }
+
   void _messagePatch(
     Map args,
   ) {
@@ -1135,6 +1403,18 @@ class Conversation with _Utilities {
     }
   }
 
+  void _messageSendQueue(
+    Map args,
+  ) {
+    if (client.onMessageSendQueued != null) {
+      client.onMessageSendQueued!(
+        client: client,
+        conversation: this,
+        position: args['position'],
+      );
+    }
+  }
+
   void _messageReceipt(
     Map args,
   ) {
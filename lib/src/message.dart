@@ -86,6 +86,11 @@ class Message with _Utilities {
   /// Indicates whether this [Message] is transient.
   bool get isTransient => _transient ?? false;
 
+  /// The delivery trace of the [Message], only available on Android for messages sampled by [RTMPlugin.setDeliveryTrace].
+  ///
+  /// A received [Message] has `serverTimestamp`, `receivedAt` and `dispatchedAt`, a sent one has `callTime`, `receivedAt` and `ackedAt`, all in milliseconds.
+  Map? get trace => _trace;
+
   String? _conversationID;
   String? _id;
   String? _fromClientID;
@@ -94,6 +99,7 @@ class Message with _Utilities {
   int? _patchedTimestamp;
   bool? _transient;
   bool? _will;
+  Map? _trace;
   MessageStatus _status = MessageStatus.none;
 
   /// To create a new [Message].
@@ -192,6 +198,7 @@ class Message with _Utilities {
     _transient = data['transient'];
     stringContent = data['msg'];
     binaryContent = data['binaryMsg'];
+    _trace = data['trace'];
     if (this is TypedMessage) {
       (this as TypedMessage)._rawData = data['typeMsgData'];
     }
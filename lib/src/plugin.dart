@@ -0,0 +1,272 @@
+part of leancloud_plugin;
+
+/// The policy of the inbound buffer when a [ChatRoom] queue is full.
+enum InboundOverflowPolicy {
+  /// drop the oldest queued [Message].
+  dropOldest,
+
+  /// keep one of every `sampleRate` overflowing [Message]s.
+  sample,
+
+  /// keep only the latest queued [Message] of each sender.
+  latestPerSender,
+}
+
+/// The method class of a call window, see [RTMPlugin.setCallWindow].
+enum CallWindowClass {
+  /// [Conversation.send], [Conversation.updateMessage] and [Conversation.recallMessage].
+  send,
+
+  /// queries of [Message]s, [Conversation]s, members and receipts.
+  query,
+
+  /// updates of [Conversation]s and their members.
+  update,
+}
+
+/// Settings and diagnostics of RTM Plugin, shared by all [Client]s, only available on Android.
+class RTMPlugin with _Utilities {
+  static final RTMPlugin _singleton = RTMPlugin._internal();
+
+  RTMPlugin._internal();
+
+  /// The periodic metrics snapshot, see [setMetricsSnapshot].
+  ///
+  /// [metrics] has the same content as the result of [getMetrics].
+  static void Function({
+    required Map metrics,
+  })? onMetricsSnapshot;
+
+  /// To buffer [Message]s of [ChatRoom]s and deliver them in batches.
+  ///
+  /// [capacity] is the max queued [Message]s of one [ChatRoom], [policy] decides which [Message] is dropped beyond that.
+  /// [sampleRate] only works with [InboundOverflowPolicy.sample].
+  /// [flushInterval] is the delay between batches in milliseconds, [batchSize] is the max [Message]s of one batch.
+  /// Dropped [Message]s are reported by [Client.onMessagesDropped].
+  /// Disabling the buffer delivers all queued [Message]s at once.
+  static Future<void> setInboundBuffer({
+    required bool enabled,
+    int capacity = 200,
+    InboundOverflowPolicy policy = InboundOverflowPolicy.dropOldest,
+    int sampleRate = 10,
+    int flushInterval = 50,
+    int batchSize = 50,
+  }) async {
+    final List<String> policies = ['dropOldest', 'sample', 'latestPerSender'];
+    await _singleton.call(
+      method: 'setInboundBuffer',
+      arguments: {
+        'enabled': enabled,
+        'capacity': capacity,
+        'policy': policies[policy.index],
+        'sampleRate': sampleRate,
+        'flushInterval': flushInterval,
+        'batchSize': batchSize,
+      },
+    );
+  }
+
+  /// To get the queue depth of the native event dispatcher.
+  ///
+  /// Returns a [Map] with `control` and `bulk` lanes (each has `depth`, `maxDepth` and `dispatched`), `replay` (buffered events) and `routes` (attached engines).
+  static Future<Map> getDispatchStats() async {
+    return await _singleton.call(
+      method: 'getDispatchStats',
+      arguments: {},
+    );
+  }
+
+  /// To restrict which events the current Flutter engine receives, useful when more than one engine runs in the app.
+  ///
+  /// [methods] are the accepted event names, e.g. `onMessageReceive`, `null` means all.
+  /// [conversationIDs] are the accepted [Conversation.id]s, `null` means all, events without conversation are always accepted.
+  /// Signature requests and replayed events always go to the engine which opened the [Client].
+  static Future<void> setEventRoute({
+    List<String>? methods,
+    List<String>? conversationIDs,
+  }) async {
+    await _singleton.call(
+      method: 'setEventRoute',
+      arguments: {
+        'methods': methods,
+        'conversationIds': conversationIDs,
+      },
+    );
+  }
+
+  /// To get the runtime metrics of the plugin.
+  ///
+  /// Returns a [Map] with latency and payload size percentiles of every method (`methods`) and event (`events`), and the stats of delivery (`delivery`), connections (`connections`) and call windows (`callWindow`).
+  static Future<Map> getMetrics() async {
+    return await _singleton.call(
+      method: 'getMetrics',
+      arguments: {},
+    );
+  }
+
+  /// To receive the metrics by [onMetricsSnapshot] every [interval] milliseconds, `0` stops it.
+  static Future<void> setMetricsSnapshot({
+    required int interval,
+  }) async {
+    await _singleton.call(
+      method: 'setMetricsSnapshot',
+      arguments: {
+        'interval': interval,
+      },
+    );
+  }
+
+  /// To attach [Message.trace] to every [sampleRate]-th received and sent [Message], `0` stops it.
+  ///
+  /// Latency percentiles of each delivery leg are always kept, see `delivery` in [getMetrics].
+  static Future<void> setDeliveryTrace({
+    required int sampleRate,
+  }) async {
+    await _singleton.call(
+      method: 'setDeliveryTrace',
+      arguments: {
+        'sampleRate': sampleRate,
+      },
+    );
+  }
+
+  /// To merge [Conversation.updateInfo] calls on the same [Conversation] within [window] milliseconds into one request, `0` stops it.
+  ///
+  /// Later keys overwrite earlier ones, every caller gets the merged outcome.
+  /// Updates with operations resolved by server, e.g. `{'__op': 'Increment', 'amount': 1}`, are never merged, they are sent on their own in call order.
+  static Future<void> setUpdateMerge({
+    required int window,
+  }) async {
+    await _singleton.call(
+      method: 'setUpdateMerge',
+      arguments: {
+        'window': window,
+      },
+    );
+  }
+
+  /// To cache results of [ConversationQuery.find] for [ttl] milliseconds, `0` stops it.
+  ///
+  /// A result older than [ttl] but not older than [maxStale] is still returned at once, and refreshed in background, see [Client.onConversationsRefreshed].
+  /// Results are dropped as soon as one of their [Conversation]s changes. All results of a [Client] are dropped when it creates a [Conversation], joins or is invited into one, or when other members join one of its [Conversation]s.
+  /// Queries of temporary [Conversation]s are never cached.
+  static Future<void> setQueryCache({
+    required int ttl,
+    int maxStale = 0,
+  }) async {
+    await _singleton.call(
+      method: 'setQueryCache',
+      arguments: {
+        'ttl': ttl,
+        'maxStale': maxStale,
+      },
+    );
+  }
+
+  /// To keep a result of [Conversation.countMembers] for [maxAge] milliseconds at most, `0` stops caching, default is 5 minutes.
+  ///
+  /// The cached count follows membership events, [maxAge] bounds the drift when an event is missed.
+  static Future<void> setMemberCountCache({
+    required int maxAge,
+  }) async {
+    await _singleton.call(
+      method: 'setMemberCountCache',
+      arguments: {
+        'maxAge': maxAge,
+      },
+    );
+  }
+
+  /// To keep the result of [Conversation.fetchReceiptTimestamps] for [maxAge] milliseconds at most, `0` stops caching, default is 5 minutes.
+  ///
+  /// The cached timestamps follow receipt events, and are dropped when the [Client] is disconnected.
+  static Future<void> setReceiptCache({
+    required int maxAge,
+  }) async {
+    await _singleton.call(
+      method: 'setReceiptCache',
+      arguments: {
+        'maxAge': maxAge,
+      },
+    );
+  }
+
+  /// To collect [Conversation.read] calls within [window] milliseconds and send them together, `0` sends each at once, which is the default.
+  ///
+  /// Reads of the same [Conversation] within [window] become one ack, acks of different [Conversation]s are still sent one by one.
+  /// Pending acks are sent when the [Client] is closed.
+  /// [Conversation.unreadMessageCount] becomes `0` at once, the read ack waits for the window.
+  static Future<void> setReadDebounce({
+    required int window,
+  }) async {
+    await _singleton.call(
+      method: 'setReadDebounce',
+      arguments: {
+        'window': window,
+      },
+    );
+  }
+
+  /// To run [Conversation.send], [Conversation.updateMessage], [Conversation.recallMessage] and [Conversation.updateInfo] of one [Conversation] one after another, in call order, default is `false`.
+  ///
+  /// Only one of those operations of a [Conversation] is in flight at a time, which lowers the throughput of bursts.
+  /// Enabling it fails while [setSendPacing] has a `burst` above `1`.
+  /// An operation without result for 60 seconds no longer blocks the later ones, time spent waiting for [setSendPacing] or uploading the file of a [FileMessage] is not counted.
+  static Future<void> setOrderedLanes({
+    required bool enabled,
+  }) async {
+    await _singleton.call(
+      method: 'setOrderedLanes',
+      arguments: {
+        'enabled': enabled,
+      },
+    );
+  }
+
+  /// To pace [Conversation.send] with token buckets, a [Message] beyond the rate is queued and reported by [Client.onMessageSendQueued].
+  ///
+  /// [rate] and [burst] limit the sends per second of one [Conversation], [clientRate] and [clientBurst] limit the sends per second of one [Client], `0` means no limit, both `0` stops pacing.
+  /// A send failed with one of [retryCodes], e.g. the rate limit errors of your app, is retried with backoff up to [maxRetries] times, ahead of later sends of its [Conversation].
+  /// With [setOrderedLanes] on, later sends of a [Conversation] wait for the paced one, and [Client.onMessageSendQueued] only counts sends of other [Conversation]s.
+  /// A [burst] above `1` can't work with [setOrderedLanes] on, so that combination fails with an invalid parameter error.
+  static Future<void> setSendPacing({
+    double rate = 0,
+    int burst = 1,
+    double clientRate = 0,
+    int clientBurst = 1,
+    int maxRetries = 3,
+    List<int> retryCodes = const [],
+  }) async {
+    await _singleton.call(
+      method: 'setSendPacing',
+      arguments: {
+        'rate': rate,
+        'burst': burst,
+        'clientRate': clientRate,
+        'clientBurst': clientBurst,
+        'maxRetries': maxRetries,
+        'retryCodes': retryCodes,
+      },
+    );
+  }
+
+  /// To bound the calls of [methodClass] running at the same time to [limit], `0` means no limit, which is the default.
+  ///
+  /// A call beyond [limit] waits in a queue of [maxQueued] calls, beyond that it fails at once with [RTMException.code] `'9100'`.
+  /// The stats of each class are in `callWindow` of [getMetrics].
+  static Future<void> setCallWindow({
+    required CallWindowClass methodClass,
+    required int limit,
+    int maxQueued = 0,
+  }) async {
+    final List<String> classes = ['send', 'query', 'update'];
+    await _singleton.call(
+      method: 'setCallWindow',
+      arguments: {
+        'class': classes[methodClass.index],
+        'limit': limit,
+        'maxQueued': maxQueued,
+      },
+    );
+  }
+}
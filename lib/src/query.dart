@@ -365,6 +365,7 @@ class ConversationQuery with _Utilities {
     for (var item in results) {
       final String? conversationID = item['objectId'];
       if (conversationID != null) {
+        final int? snapshotVersion = item.remove('version');
         Conversation? conversation = client.conversationMap[conversationID];
         if (conversation != null) {
           conversation._rawData = item;
@@ -375,6 +376,7 @@ class ConversationQuery with _Utilities {
           );
           client.conversationMap[conversationID] = conversation;
         }
+        conversation._snapshotVersion = snapshotVersion;
         if (isIncludeLastMessage) {
           dynamic msg = item['msg'];
           if (msg is Map) {